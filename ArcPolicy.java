@@ -0,0 +1,198 @@
+/*
+ * @file    ArcPolicy.java
+ * @brief   This class is the adaptive replacement cache (ARC) policy of
+ *           Megiddo and Modha. Resident slots are kept in two LRU lists: T1
+ *           for blocks seen once recently and T2 for blocks seen at least
+ *           twice. The block IDs most recently evicted from each list are
+ *           remembered in the ghost lists B1 and B2. A miss on a ghost block
+ *           moves the target size of T1 towards whichever list would have kept
+ *           it, so the policy continuously balances recency against frequency.
+ *           A hot working set survives random intrusions, because intruders
+ *           enter T1 and are evicted from there first. The ghost lists hold
+ *           bare block IDs in GhostLists, so an eviction creates no object.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class ArcPolicy implements ReplacementPolicy {
+    private int              capacity;      // c: slots in the segment
+    private int              target;        // p: target size of T1
+    private int[]            block;         // block ID of each slot
+    private SlotList         t1;            // resident, seen once
+    private SlotList         t2;            // resident, seen twice
+    private GhostList        b1;            // evicted from T1
+    private GhostList        b2;            // evicted from T2
+    private int[]            evictedNext;   // slot older than each victim
+                                            //  when it was evicted, or -1
+    private SlotBits         evictedT1;     // victims evicted from T1
+    
+    
+    /**
+     * Initializes this ArcPolicy for a given number of slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   No slot is resident; no history is remembered.
+     */
+    public ArcPolicy(int slots) {
+        capacity    = slots;
+        target      = 0;
+        block       = new int[slots];
+        t1          = new SlotList(slots);
+        t2          = new SlotList(slots);
+        b1          = new GhostList(2 * slots);
+        b2          = new GhostList(2 * slots);
+        evictedNext = new int[slots];
+        evictedT1   = new SlotBits(slots);
+    } // end constructor
+    
+    
+    /**
+     * Moves the slot to the most recently used end of T2.
+     * @see    ReplacementPolicy#hit(int)
+     */
+    public void hit(int slot) {
+        t1.remove(slot);
+        t2.push(slot);
+    } // end hit(int)
+    
+    
+    /**
+     * Places the slot in T2 if its block was remembered in a ghost list, and
+     *  adapts the target size of T1 accordingly; otherwise, places it in T1.
+     * @see    ReplacementPolicy#fill(int, int)
+     */
+    public void fill(int slot, int blockId) {
+        block[slot] = blockId;
+        
+        if (b1.contains(blockId)) {
+            // T1 was too small to keep this block, so let it grow
+            target = Math.min(capacity, target + Math.max(1, b2.size() /
+                                                              b1.size()));
+            b1.remove(blockId);
+            t2.push(slot);
+        } // end if (b1.contains(blockId))
+        else if (b2.contains(blockId)) {
+            // T2 was too small to keep this block, so let it grow
+            target = Math.max(0, target - Math.max(1, b1.size() /
+                                                      b2.size()));
+            b2.remove(blockId);
+            t2.push(slot);
+        } // end else if (b2.contains(blockId))
+        else {
+            t1.push(slot);
+        } // end else (blockId not remembered)
+        
+        trim();
+    } // end fill(int, int)
+    
+    
+    /**
+     * Evicts the least recently used slot of T1 if T1 is larger than its
+     *  target size, and of T2 otherwise. The evicted block ID is remembered in
+     *  the matching ghost list.
+     * @see    ReplacementPolicy#victim(int, ReplacementPolicy.Slots)
+     */
+    public int victim(int blockId, Slots slots) {
+        int     slot     = -1;
+        boolean fromT1   = t1.size() > 0 &&
+                           (t1.size() > target ||
+                            (t1.size() == target &&
+                             b2.contains(blockId)));
+        
+        if (fromT1) {
+            slot = t1.oldest(slots);
+        } // end if (fromT1)
+        
+        if (slot == -1) {
+            slot   = t2.oldest(slots);
+            fromT1 = false;
+        } // end if (slot == -1)
+        
+        if (slot == -1) {
+            slot   = t1.oldest(slots);
+            fromT1 = true;
+        } // end if (slot == -1)
+        
+        if (slot == -1) {
+            return -1;
+        } // end if (slot == -1)
+        
+        if (fromT1) {
+            evictedNext[slot] = t1.older(slot);
+            evictedT1.set(slot);
+            t1.remove(slot);
+            b1.add(block[slot]);
+        } // end if (fromT1)
+        else {
+            evictedNext[slot] = t2.older(slot);
+            evictedT1.clear(slot);
+            t2.remove(slot);
+            b2.add(block[slot]);
+        } // end else (!fromT1)
+        
+        trim();
+        return slot;
+    } // end victim(int, Slots)
+    
+    
+    /**
+     * Forgets the ghost entry of the victim and puts it back into the list
+     *  it was evicted from, ahead of the slot that was older than it if that
+     *  is still there, or at the least recently used end otherwise. The
+     *  target size of T1 is left alone, as an eviction does not change it.
+     * @see    ReplacementPolicy#restore(int, int)
+     */
+    public void restore(int slot, int blockId) {
+        SlotList list  = evictedT1.get(slot) ? t1 : t2;
+        int      older = evictedNext[slot];
+        
+        block[slot] = blockId;
+        (evictedT1.get(slot) ? b1 : b2).remove(blockId);
+        list.insert(slot, (older != -1 && list.contains(older)) ? older : -1);
+        trim();
+    } // end restore(int, int)
+    
+    
+    /**
+     * @see    ReplacementPolicy#remove(int)
+     */
+    public void remove(int slot) {
+        t1.remove(slot);
+        t2.remove(slot);
+    } // end remove(int)
+    
+    
+    /**
+     * Sets c to the new number of slots, caps the target size of T1 at c, and
+     *  trims the ghost lists to their new bounds.
+     * @see    ReplacementPolicy#resize(int)
+     */
+    public void resize(int slots) {
+        capacity    = slots;
+        target      = Math.min(target, capacity);
+        block       = java.util.Arrays.copyOf(block, slots);
+        evictedNext = java.util.Arrays.copyOf(evictedNext, slots);
+        evictedT1.resize(slots);
+        t1.resize(slots);
+        t2.resize(slots);
+        trim();
+        b1.resize(2 * slots);
+        b2.resize(2 * slots);
+    } // end resize(int)
+    
+    
+    /**
+     * Forgets the oldest ghost entries so that T1 and B1 together hold at most
+     *  c blocks and all four lists together hold at most 2c blocks.
+     * @pre    None.
+     * @post   The ghost lists are within their bounds.
+     */
+    private void trim() {
+        while (t1.size() + b1.size() > capacity && !b1.isEmpty()) {
+            b1.dropOldest();
+        } // end while (t1.size() + b1.size() > capacity && ...)
+        
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+            (b2.isEmpty() ? b1 : b2).dropOldest();
+        } // end while (t1.size() + t2.size() + ... > 2 * capacity)
+    } // end trim()
+} // end class ArcPolicy
@@ -0,0 +1,242 @@
+/*
+ * @file    AsyncCache.java
+ * @brief   This class performs cache reads and writes on behalf of threads
+ *           that do not want to wait for them. A request is queued and a
+ *           completion handle is returned at once; a small pool of worker
+ *           threads performs the queued requests through a Cache, so a single
+ *           caller may keep as many disk requests outstanding as there are
+ *           workers. The caller later waits for, or polls, the handle to
+ *           collect the result, which also frees the handle. Handles carry a
+ *           generation number, so a handle that was already collected is
+ *           rejected rather than confused with a later request.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class AsyncCache {
+    public final static int  SUCCEEDED = 0,     // request completed
+                             FAILED    = -1,    // request failed, or no such
+                                                //  handle
+                             PENDING   = 1;     // request not completed yet
+    private final static int FREE      = 0,     // states of a request
+                             QUEUED    = 1,
+                             RUNNING   = 2,
+                             DONE      = 3;
+    private Cache            cache;         // cache performing the requests
+    private int[]            state;         // state of each request
+    private int[]            generation;    // times each request was reused
+    private boolean[]        write;         // whether each request writes
+    private int[]            block;         // block ID of each request
+    private byte[][]         buffer;        // user buffer of each request
+    private boolean[]        success;       // result of each done request
+    private int[]            queue;         // queued requests, circular
+    private int              head;          // next request to perform
+    private int              size;          // number of queued requests
+    
+    
+    /**
+     * Initializes an AsyncCache over a cache and starts its workers. The
+     *  workers are daemons, so they do not keep ThreadOS alive.
+     * @param  cache  The cache that performs the requests.
+     * @param  workers  Number of requests performed at the same time.
+     * @param  maxRequests  Number of requests that may be outstanding, i.e.
+     *                       submitted but not yet collected.
+     * @pre    cache is not null; workers > 0; maxRequests > 0.
+     * @post   No request is outstanding; the workers are waiting for one.
+     */
+    public AsyncCache(Cache cache, int workers, int maxRequests) {
+        this.cache = cache;
+        state      = new int[maxRequests];
+        generation = new int[maxRequests];
+        write      = new boolean[maxRequests];
+        block      = new int[maxRequests];
+        buffer     = new byte[maxRequests][];
+        success    = new boolean[maxRequests];
+        queue      = new int[maxRequests];
+        head       = 0;
+        size       = 0;
+        
+        for (int i = 0; i < workers; ++i) {
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    serve();
+                } // end run()
+            };
+            
+            worker.setDaemon(true);
+            worker.start();
+        } // end for (; i < workers; )
+    } // end constructor
+    
+    
+    /**
+     * Queues a cache read or write. The buffer is used when the request is
+     *  performed, not when it is submitted, so the caller must leave it alone
+     *  until the request has been collected.
+     * @param  isWrite  true to write buffer to the block; false to read the
+     *                   block into buffer.
+     * @param  blockId  The location of the block on the hard disk.
+     * @param  data  A buffer the size of a block on the hard disk.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   The request is queued, unless too many are outstanding.
+     * @return A handle for the request; FAILED if too many requests are
+     *          outstanding.
+     */
+    public synchronized int submit(boolean isWrite, int blockId,
+                                   byte data[]) {
+        int request = -1;
+        
+        for (int i = 0; i < state.length; ++i) {
+            if (state[i] == FREE) {
+                request = i;
+                break;
+            } // end if (state[i] == FREE)
+        } // end for (; i < state.length; )
+        
+        if (request == -1) {
+            return FAILED;
+        } // end if (request == -1)
+        
+        state[request]  = QUEUED;
+        write[request]  = isWrite;
+        block[request]  = blockId;
+        buffer[request] = data;
+        queue[(head + size) % queue.length] = request;
+        ++size;
+        notifyAll();
+        
+        return generation[request] * state.length + request;
+    } // end submit(boolean, int, byte[])
+    
+    
+    /**
+     * Waits for a request to complete and collects its result.
+     * @param  handle  A handle returned by submit().
+     * @pre    None.
+     * @post   The request has completed and its handle is no longer valid.
+     * @return SUCCEEDED if the request completed successfully; FAILED if it
+     *          failed, if handle is not outstanding or if the request was
+     *          collected by another thread during the wait.
+     */
+    public synchronized int await(int handle) {
+        int request = lookup(handle);
+        
+        if (request == -1) {
+            return FAILED;
+        } // end if (request == -1)
+        
+        while (state[request] != DONE) {
+            try {
+                wait();
+            } catch (InterruptedException e) { }
+            
+            // another thread may have collected the request while this one
+            //  waited, and the request may since have been reused
+            if (lookup(handle) != request) {
+                return FAILED;
+            } // end if (lookup(handle) != request)
+        } // end while (state[request] != DONE)
+        
+        return collect(request);
+    } // end await(int)
+    
+    
+    /**
+     * Checks whether a request has completed, collecting its result if so.
+     * @param  handle  A handle returned by submit().
+     * @pre    None.
+     * @post   If the request has completed, its handle is no longer valid.
+     * @return PENDING if the request has not completed; otherwise, as for
+     *          await().
+     */
+    public synchronized int poll(int handle) {
+        int request = lookup(handle);
+        
+        if (request == -1) {
+            return FAILED;
+        } // end if (request == -1)
+        
+        if (state[request] != DONE) {
+            return PENDING;
+        } // end if (state[request] != DONE)
+        
+        return collect(request);
+    } // end poll(int)
+    
+    
+    /**
+     * Performs queued requests forever; run by every worker.
+     * @pre    None.
+     * @post   Does not return.
+     */
+    private void serve() {
+        while (true) {
+            int request;
+            
+            synchronized (this) {
+                while (size == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) { }
+                } // end while (size == 0)
+                
+                request        = queue[head];
+                head           = (head + 1) % queue.length;
+                --size;
+                state[request] = RUNNING;
+            } // end synchronized (this)
+            
+            // the request is RUNNING, so no other thread touches it
+            boolean result = write[request]
+                             ? cache.write(block[request], buffer[request])
+                             : cache.read(block[request], buffer[request]);
+            
+            synchronized (this) {
+                success[request] = result;
+                state[request]   = DONE;
+                notifyAll();
+            } // end synchronized (this)
+        } // end while (true)
+    } // end serve()
+    
+    
+    /**
+     * Finds the request a handle refers to.
+     * @param  handle  A handle returned by submit().
+     * @pre    The calling thread holds the monitor of this AsyncCache.
+     * @post   This AsyncCache is unchanged.
+     * @return The index of the request; -1 if handle is not outstanding.
+     */
+    private int lookup(int handle) {
+        if (handle < 0) {
+            return -1;
+        } // end if (handle < 0)
+        
+        int request = handle % state.length;
+        
+        if (state[request] == FREE ||
+            generation[request] != handle / state.length) {
+            return -1;
+        } // end if (state[request] == FREE || ...)
+        
+        return request;
+    } // end lookup(int)
+    
+    
+    /**
+     * Frees a completed request and reports its result.
+     * @param  request  Index of a DONE request.
+     * @pre    The calling thread holds the monitor of this AsyncCache.
+     * @post   request is free; handles to it are no longer valid.
+     * @return SUCCEEDED or FAILED, as the request did.
+     */
+    private int collect(int request) {
+        state[request]  = FREE;
+        buffer[request] = null;
+        // keep handles non-negative when the generation wraps around
+        generation[request] = (generation[request] + 1) %
+                              (Integer.MAX_VALUE / state.length);
+        
+        return success[request] ? SUCCEEDED : FAILED;
+    } // end collect(int)
+} // end class AsyncCache
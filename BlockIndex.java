@@ -0,0 +1,198 @@
+/*
+ * @file    BlockIndex.java
+ * @brief   This class is a primitive hash index that maps hard disk block IDs
+ *           to the slots of a resident cache that hold them. Keys and values
+ *           are stored in parallel int arrays using open addressing with
+ *           linear probing, so no objects are created per entry. Removal
+ *           shifts later entries of a probe run back into the freed position,
+ *           so no tombstones are left behind and lookups remain O(1) however
+ *           many slots have been filled and evicted.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class BlockIndex {
+    private final static int EMPTY = -1;    // key of an unused position
+    private int[]            keys;          // block IDs; EMPTY if unused
+    private int[]            values;        // cache slot of each block ID
+    private int              mask;          // keys.length - 1
+    private int              size;          // number of mapped block IDs
+    
+    
+    /**
+     * Initializes this BlockIndex with room for a given number of mappings.
+     *  The table is kept at most half full, so probe runs stay short.
+     * @param  capacity  Largest number of block IDs expected to be mapped at
+     *                    one time; normally, the number of cache slots.
+     * @pre    None.
+     * @post   An empty BlockIndex has been created that can hold at least
+     *          capacity mappings without exceeding half occupancy.
+     */
+    public BlockIndex(int capacity) {
+        int length = 2;
+        
+        while (length < capacity * 2) {
+            length <<= 1;
+        } // end while (length < capacity * 2)
+        
+        keys   = new int[length];
+        values = new int[length];
+        mask   = length - 1;
+        size   = 0;
+        java.util.Arrays.fill(keys, EMPTY);
+    } // end constructor
+    
+    
+    /**
+     * Looks up the cache slot that holds a block.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This BlockIndex is unchanged.
+     * @return The cache slot mapped to blockId; -1 if blockId is not mapped.
+     */
+    public int get(int blockId) {
+        for (int i = hash(blockId); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == blockId) {
+                return values[i];
+            } // end if (keys[i] == blockId)
+        } // end for (; keys[i] != EMPTY; )
+        
+        return -1;
+    } // end get(int)
+    
+    
+    /**
+     * Maps a block to a cache slot, replacing any existing mapping for that
+     *  block. The table is doubled if it would otherwise become more than
+     *  half full.
+     * @param  blockId  The location of the block on the hard disk; must not be
+     *                   negative.
+     * @param  slot  The index of the cache slot that holds blockId.
+     * @pre    blockId >= 0.
+     * @post   get(blockId) returns slot.
+     */
+    public void put(int blockId, int slot) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+        } // end if ((size + 1) * 2 > keys.length)
+        
+        int i = hash(blockId);
+        
+        while (keys[i] != EMPTY) {
+            if (keys[i] == blockId) {
+                values[i] = slot;
+                return;
+            } // end if (keys[i] == blockId)
+            
+            i = (i + 1) & mask;
+        } // end while (keys[i] != EMPTY)
+        
+        keys[i]   = blockId;
+        values[i] = slot;
+        ++size;
+    } // end put(int, int)
+    
+    
+    /**
+     * Removes the mapping for a block, if there is one. Entries later in the
+     *  same probe run are shifted back so that every remaining key can still
+     *  be reached from its home position.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   get(blockId) returns -1.
+     * @return The cache slot that was mapped to blockId; -1 if blockId was
+     *          not mapped.
+     */
+    public int remove(int blockId) {
+        int i = hash(blockId);
+        
+        while (keys[i] != blockId) {
+            if (keys[i] == EMPTY) {
+                return -1;
+            } // end if (keys[i] == EMPTY)
+            
+            i = (i + 1) & mask;
+        } // end while (keys[i] != blockId)
+        
+        int slot = values[i];
+        int hole = i;
+        
+        --size;
+        
+        for (i = (i + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = hash(keys[i]);
+            
+            // move the entry back only if the hole lies between its home
+            //  position and its current position, cyclically
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole]   = keys[i];
+                values[hole] = values[i];
+                hole         = i;
+            } // end if (((i - home) & mask) >= ((i - hole) & mask))
+        } // end for (; keys[i] != EMPTY; )
+        
+        keys[hole] = EMPTY;
+        return slot;
+    } // end remove(int)
+    
+    
+    /**
+     * Removes all mappings from this BlockIndex.
+     * @pre    None.
+     * @post   This BlockIndex is empty.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, EMPTY);
+        size = 0;
+    } // end clear()
+    
+    
+    /**
+     * Reports the number of block IDs currently mapped.
+     * @pre    None.
+     * @post   This BlockIndex is unchanged.
+     * @return The number of mappings in this BlockIndex.
+     */
+    public int size() {
+        return size;
+    } // end size()
+    
+    
+    /**
+     * Computes the home position of a block ID. The ID is scrambled first, so
+     *  that runs of consecutive block IDs do not form long probe runs.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This BlockIndex is unchanged.
+     * @return The position in keys[] at which probing for blockId begins.
+     */
+    private int hash(int blockId) {
+        int h = blockId * 0x9E3779B9;
+        
+        return (h ^ (h >>> 16)) & mask;
+    } // end hash(int)
+    
+    
+    /**
+     * Moves every mapping into a new table of a given length.
+     * @param  length  New table length; must be a power of two greater than
+     *                  twice the current size.
+     * @pre    length is a power of two; length > size * 2.
+     * @post   All mappings are preserved in tables of the given length.
+     */
+    private void rehash(int length) {
+        int[] oldKeys   = keys;
+        int[] oldValues = values;
+        
+        keys   = new int[length];
+        values = new int[length];
+        mask   = length - 1;
+        size   = 0;
+        java.util.Arrays.fill(keys, EMPTY);
+        
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            } // end if (oldKeys[i] != EMPTY)
+        } // end for (; i < oldKeys.length; )
+    } // end rehash(int)
+} // end class BlockIndex
@@ -0,0 +1,95 @@
+/*
+ * @file    BlockStore.java
+ * @brief   This interface is the data storage of one cache segment: it holds
+ *           one block-sized buffer per slot, addressed by slot index, while
+ *           the segment keeps all other state of the slot. Data are only
+ *           copied in and out by range, read from and written to the disk
+ *           whole, or exposed through a ByteBuffer view for pinning, so an
+ *           implementation is free to lay the buffers out as it likes, e.g. as
+ *           one Java array per slot or as a few large off-heap slabs. Methods
+ *           that touch the data of a slot are called either with the monitor
+ *           of the segment held or by the only thread that owns the slot, so
+ *           they need no locking; resize() is called with the monitor held and
+ *           must not move the data of any slot that remains.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.nio.ByteBuffer;
+
+
+public interface BlockStore {
+    public final static int HEAP = 0,   // one Java array per slot
+                            SLAB = 1;   // large direct slabs, off the heap
+    
+    
+    /**
+     * Copies part of a slot out to an array.
+     * @param  slot  Index of the slot.
+     * @param  position  First byte of the slot to copy.
+     * @param  dst  Array to copy the bytes to.
+     * @param  offset  First byte of dst to copy to.
+     * @param  length  Number of bytes to copy.
+     * @pre    The ranges lie within the slot and within dst.
+     * @post   The slot is unchanged.
+     */
+    public void get(int slot, int position, byte dst[], int offset,
+                    int length);
+    
+    
+    /**
+     * Copies part of an array into a slot.
+     * @param  slot  Index of the slot.
+     * @param  position  First byte of the slot to copy to.
+     * @param  src  Array to copy the bytes from.
+     * @param  offset  First byte of src to copy.
+     * @param  length  Number of bytes to copy.
+     * @pre    The ranges lie within the slot and within src.
+     * @post   The range of the slot holds the bytes of src.
+     */
+    public void put(int slot, int position, byte src[], int offset,
+                    int length);
+    
+    
+    /**
+     * Exposes the data of a slot in place.
+     * @param  slot  Index of the slot.
+     * @pre    None.
+     * @post   The slot is unchanged.
+     * @return A writable view of the whole slot, with position 0 and limit
+     *          and capacity the block size; it remains valid for as long as
+     *          the slot exists.
+     */
+    public ByteBuffer view(int slot);
+    
+    
+    /**
+     * Reads a whole block from the disk into a slot.
+     * @param  slot  Index of the slot.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   The slot holds the data of blockId, unless an exception was
+     *          thrown.
+     */
+    public void read(int slot, int blockId);
+    
+    
+    /**
+     * Writes a whole slot to a block on the disk.
+     * @param  slot  Index of the slot.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   blockId holds the data of the slot, unless an exception was
+     *          thrown.
+     */
+    public void write(int slot, int blockId);
+    
+    
+    /**
+     * Changes the number of slots. Slots that remain keep their data in
+     *  place, so views of them stay valid; new slots hold arbitrary data.
+     * @param  slots  New number of slots.
+     * @pre    slots > 0.
+     * @post   Slots 0 .. slots - 1 exist.
+     */
+    public void resize(int slots);
+} // end interface BlockStore
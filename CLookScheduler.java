@@ -0,0 +1,38 @@
+/*
+ * @file    CLookScheduler.java
+ * @brief   This class is the circular LOOK (C-LOOK) disk scheduler, an
+ *           elevator that moves only upward: it serves the nearest request at
+ *           or above the head, and when there is none, it returns to the
+ *           lowest pending block and sweeps up again. Every block is passed
+ *           once per sweep, so waits are more even than under SSTF, while the
+ *           seeks stay short. Requests for the same block are served oldest
+ *           first.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class CLookScheduler implements DiskScheduler {
+    /**
+     * Chooses the lowest request at or above the head, or the lowest of all
+     *  if there is none above.
+     * @see    DiskScheduler#choose(DiskRequest[], int, int)
+     */
+    public int choose(DiskRequest pending[], int count, int head) {
+        int above  = -1;    // lowest request at or above head
+        int lowest = 0;     // lowest request of all
+        
+        for (int i = 0; i < count; ++i) {
+            int blockId = pending[i].blockId();
+            
+            if (blockId >= head &&
+                (above == -1 || blockId < pending[above].blockId())) {
+                above = i;
+            } // end if (blockId >= head && ...)
+            
+            if (blockId < pending[lowest].blockId()) {
+                lowest = i;
+            } // end if (blockId < pending[lowest].blockId())
+        } // end for (; i < count; )
+        
+        return above != -1 ? above : lowest;
+    } // end choose(DiskRequest[], int, int)
+} // end class CLookScheduler
@@ -1,57 +1,51 @@
 /*
  * @file    Cache.java
  * @brief   This class is a memory-resident cache for blocks read from a hard
- *           disk. Whenever a read or write is requested, a linear search is
- *           performed on the resident cache. If the requested block is found,
- *           then the operation is performed in cache only. If it is not found,
- *           then a free cache block is sought to perform the operation. If no
- *           free slots are available, then a slot is selected to be freed by
- *           the second-chance (clock) algorithm. A dirty bit is maintained for
- *           each slot so that, if it is selected for replacement, it may be
- *           written back to the hard disk if it has been modified. A sync()
- *           and flush() method are provided to force all modified slots to be
- *           written back to disk.
+ *           disk. The resident cache is divided into one or more segments,
+ *           and each block ID is hashed to exactly one of them. Every segment
+ *           has its own slots, hash index, replacement policy and monitor, so
+ *           threads touching blocks in different segments do not serialize on
+ *           a single lock. The replacement policy (second-chance clock, ARC,
+ *           2Q or LIRS) is selected when the Cache is built. With one segment
+ *           and the clock policy, this Cache behaves as a single second-chance
+ *           cache over all of its slots. A dirty bit
+ *           is maintained for each slot so that, if it is selected for
+ *           replacement, it may be written back to the hard disk if it has
+ *           been modified. A sync() and flush() method are provided to force
+ *           all modified slots to be written back to disk. An optional
+ *           CacheFlusher writes dirty slots back in the background and is
+ *           woken whenever a write leaves a segment above its high watermark.
+ *           An optional ReadAhead is told of every read, detects sequential
+ *           streams and reads the blocks ahead of them into clean slots.
+ *           Kernel code may also pin a block and use its cached data in place
+ *           through a ByteBuffer view, rather than copying the whole block.
+ *           Block data are kept on the Java heap, or in a few large slabs
+ *           outside it, as selected when the Cache is built. An optional
+ *           admission filter caches a missing block only if it is used more
+ *           often than the block it would replace, so scans of blocks used
+ *           once do not flush out the hot ones. An optional CacheManifest
+ *           records the resident blocks, most recently used first, whenever
+ *           the cache is flushed, so that a CacheWarmer can read them back in
+ *           after the next boot.
  * @author  Brendan Sweeney, SID 1161836
  * @date    November 28, 2012
  */
+import java.nio.ByteBuffer;
+
+
 public class Cache {
     private final static int DEFAULT_BLOCK_SIZE   = 512,    // for default
-                             DEFAULT_CACHE_BLOCKS = 10;     //  constructor
-    private int              nextVictim;    // index of next replacement victim
-    private CacheEntry[]     pageTable;     // disk read/write cache
-    
-    
-    /*
-    * @brief   This class is a memory-resident block of cache for data read
-    *           from a hard disk. The block size it uses must be set by the
-    *           containing class. The other variables are set to default values
-    *           used in the second-chance (clock) block replacement algorithm.
-    */
-    private class CacheEntry {
-        public int     frame;       // hard disk index of cached block
-        public boolean reference;   // recent access bit
-        public boolean dirty;       // block written in cache only
-        public byte[]  buffer;      // data buffer of one hard disk block
-        
-        
-        /**
-        * Initializes a block of cache with a set of default values used in the
-        *  second-chance (clock) block replacement algorithm and a block size
-        *  set by the containing class.
-        * @param  blockSize  Number of bytes per block expected on the hard
-        *                     disk to be cached.
-        * @pre    blockSize matches the size, in bytes, of a block on a hard
-        *          disk.
-        * @post   An empty CacheEntry has been created to hold blockSize bytes
-        *          of data.
-        */
-        public CacheEntry(int blockSize) {
-            frame     = -1;
-            reference = false;
-            dirty     = false;
-            buffer    = new byte[blockSize];
-        } // end constructor
-    } // end class CacheEntry
+                             DEFAULT_CACHE_BLOCKS = 10,     //  constructor
+                             DEFAULT_SEGMENTS     = 1,
+                             DEFAULT_POLICY       = ReplacementPolicy.CLOCK,
+                             DEFAULT_STORAGE      = BlockStore.HEAP;
+    private final static boolean DEFAULT_ADMISSION = false; // cache every miss
+    private int              blockSize;     // bytes per hard disk block
+    private CacheSegment[]   segments;      // independently locked slot sets
+    private CacheStats       stats;         // event counters of all segments
+    private CacheFlusher     flusher;       // background write-back, or null
+    private ReadAhead        readAhead;     // sequential prefetch, or null
+    private CacheManifest    manifest;      // record of hot blocks, or null
     
     
     /**
@@ -62,17 +56,13 @@ public class Cache {
      *          data blocks from a hard disk.
      */
     public Cache() {
-        nextVictim = 0;
-        pageTable  = new CacheEntry[DEFAULT_CACHE_BLOCKS];
-        
-        for (int i = 0; i < DEFAULT_CACHE_BLOCKS; ++i) {
-            pageTable[i] = new CacheEntry(DEFAULT_BLOCK_SIZE);
-        } // end for (; i < DEFAULT_CACHE_BLOCKS; )
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_BLOCKS, DEFAULT_SEGMENTS);
     } // end default constructor
     
     
     /**
-     * Initializes this Cache to a set of provided values.
+     * Initializes this Cache to a set of provided values, using a single
+     *  segment.
      * @param  blockSize  Expected block size, in bytes, used by hard disk to
      *                     cache.
      * @param  cacheBlocks  Number of blocks to store in the resident cache.
@@ -81,8 +71,91 @@ public class Cache {
      *          blocks from a hard disk.
      */
     public Cache(int blockSize, int cacheBlocks) {
-        nextVictim = 0;
-        
+        this(blockSize, cacheBlocks, DEFAULT_SEGMENTS);
+    } // end constructor
+    
+    
+    /**
+     * Initializes this Cache to a set of provided values, using the
+     *  second-chance (clock) replacement policy.
+     * @param  blockSize  Expected block size, in bytes, used by hard disk to
+     *                     cache.
+     * @param  cacheBlocks  Number of blocks to store in the resident cache.
+     * @param  segmentCount  Number of independently locked segments.
+     * @pre    The hard disk to cache uses a block size of blockSize bytes.
+     * @post   An empty Cache has been created to hold cacheBlocks of data
+     *          blocks from a hard disk in segmentCount segments.
+     */
+    public Cache(int blockSize, int cacheBlocks, int segmentCount) {
+        this(blockSize, cacheBlocks, segmentCount, DEFAULT_POLICY);
+    } // end constructor
+    
+    
+    /**
+     * Initializes this Cache to a set of provided values. The slots are
+     *  divided as evenly as possible among the segments; there are never more
+     *  segments than slots. Each segment gets its own instance of the
+     *  selected replacement policy.
+     * @param  blockSize  Expected block size, in bytes, used by hard disk to
+     *                     cache.
+     * @param  cacheBlocks  Number of blocks to store in the resident cache.
+     * @param  segmentCount  Number of independently locked segments.
+     * @param  policyType  ReplacementPolicy.CLOCK, ARC, TWO_Q or LIRS.
+     * @pre    The hard disk to cache uses a block size of blockSize bytes.
+     * @post   An empty Cache has been created to hold cacheBlocks of data
+     *          blocks from a hard disk in segmentCount segments.
+     */
+    public Cache(int blockSize, int cacheBlocks, int segmentCount,
+                 int policyType) {
+        this(blockSize, cacheBlocks, segmentCount, policyType,
+             DEFAULT_STORAGE);
+    } // end constructor
+    
+    
+    /**
+     * Initializes this Cache to a set of provided values, storing block data
+     *  as selected. With BlockStore.SLAB, the data of every segment are kept
+     *  in a few large slabs outside the Java heap, so a large cache adds
+     *  almost nothing to garbage collection.
+     * @param  blockSize  Expected block size, in bytes, used by hard disk to
+     *                     cache.
+     * @param  cacheBlocks  Number of blocks to store in the resident cache.
+     * @param  segmentCount  Number of independently locked segments.
+     * @param  policyType  ReplacementPolicy.CLOCK, ARC, TWO_Q or LIRS.
+     * @param  storageType  BlockStore.HEAP or SLAB.
+     * @pre    The hard disk to cache uses a block size of blockSize bytes.
+     * @post   An empty Cache has been created to hold cacheBlocks of data
+     *          blocks from a hard disk in segmentCount segments.
+     */
+    public Cache(int blockSize, int cacheBlocks, int segmentCount,
+                 int policyType, int storageType) {
+        this(blockSize, cacheBlocks, segmentCount, policyType, storageType,
+             DEFAULT_ADMISSION);
+    } // end constructor
+    
+    
+    /**
+     * Initializes this Cache to a set of provided values, optionally with
+     *  an admission filter. With the filter, each segment counts the recent
+     *  accesses to every block in a frequency sketch, and a block read or
+     *  written on a miss replaces the victim chosen by the policy only if it
+     *  has been accessed more often than the victim's block; otherwise, it
+     *  is transferred straight to or from the disk and not cached, so a
+     *  scan over many blocks used once leaves the hot blocks resident.
+     * @param  blockSize  Expected block size, in bytes, used by hard disk to
+     *                     cache.
+     * @param  cacheBlocks  Number of blocks to store in the resident cache.
+     * @param  segmentCount  Number of independently locked segments.
+     * @param  policyType  ReplacementPolicy.CLOCK, ARC, TWO_Q or LIRS.
+     * @param  storageType  BlockStore.HEAP or SLAB.
+     * @param  admission  Whether misses must pass the admission filter to be
+     *                     cached.
+     * @pre    The hard disk to cache uses a block size of blockSize bytes.
+     * @post   An empty Cache has been created to hold cacheBlocks of data
+     *          blocks from a hard disk in segmentCount segments.
+     */
+    public Cache(int blockSize, int cacheBlocks, int segmentCount,
+                 int policyType, int storageType, boolean admission) {
         if (blockSize < 1) {
             blockSize = DEFAULT_BLOCK_SIZE;
         } // end if (blockSize < 1)
@@ -91,21 +164,32 @@ public class Cache {
             cacheBlocks = DEFAULT_CACHE_BLOCKS;
         } // end if (cacheBlocks < 1)
         
-        pageTable = new CacheEntry[cacheBlocks];
+        if (segmentCount < 1) {
+            segmentCount = DEFAULT_SEGMENTS;
+        } // end if (segmentCount < 1)
         
-        for (int i = 0; i < cacheBlocks; ++i) {
-            pageTable[i] = new CacheEntry(blockSize);
-        } // end for (; i < cacheBlocks; )
+        if (segmentCount > cacheBlocks) {
+            segmentCount = cacheBlocks;
+        } // end if (segmentCount > cacheBlocks)
+        
+        this.blockSize = blockSize;
+        segments       = new CacheSegment[segmentCount];
+        stats          = new CacheStats();
+        
+        for (int i = 0; i < segmentCount; ++i) {
+            // spread the remainder over the first segments
+            segments[i] = new CacheSegment(blockSize,
+                                           cacheBlocks / segmentCount +
+                                           (i < cacheBlocks % segmentCount
+                                            ? 1 : 0), policyType,
+                                           storageType, admission, stats);
+        } // end for (; i < segmentCount; )
     } // end constructor
     
     
     /**
-     * Reads a block of data from the cache. If the specified block is not
-     *  already in the cache, then an empty slot is sought in which to store
-     *  the data. If no empty slot is available, then a slot is selected for
-     *  replacement using the second-chance (clock) algorithm. If the selected
-     *  slot is dirty, then its contents are written to disk before the new
-     *  block is read into it.
+     * Reads a block of data from the cache. The block is looked up in, and if
+     *  necessary read into, the segment it hashes to; see CacheSegment.read().
      * @param  blockId  The location of the block on the hard disk to read.
      * @param  buffer  A data buffer to store the data of the located block.
      * @pre    blockId references a data block on the hard disk; buffer is the
@@ -113,45 +197,209 @@ public class Cache {
      * @post   The resident cache and buffer[] contain the data of the block
      *          referenced by blockId; any block that was replaced in the
      *          resident cache has been written back to the hard disk.
-     * @return true if all operations completed successfully; false, otherwise.
+     * @return true if all operations completed successfully; false if buffer
+     *          is not the size of a block or an operation failed.
      */
-    public synchronized boolean read(int blockId, byte buffer[]) {
-        int count = pageTable.length;
+    public boolean read(int blockId, byte buffer[]) {
+        boolean success;
         
-        for (int i = 0; i < count; ++i) {
-            if (pageTable[i].frame == blockId) {
-                // block in cache, read it and be done
-                pageTable[i].reference = true;
-                System.arraycopy(pageTable[i].buffer, 0,
-                                 buffer, 0, buffer.length);
-                return true;
-            } // end if (pageTable[i].frame == blockId)
-        } // end for(; i < count; )
-        
-        try {   // block not in cache, pick a slot for it
-            setNextVictim();
-            SysLib.rawread(blockId, buffer);
-            System.arraycopy(buffer, 0, pageTable[nextVictim].buffer,
-                             0, buffer.length);
-            pageTable[nextVictim].frame     = blockId;
-            pageTable[nextVictim].reference = true;
-            pageTable[nextVictim].dirty     = false;
-            nextVictim = (nextVictim + 1) % count;
-        } catch (Exception e) {
+        if (buffer.length != blockSize) {
             return false;
-        } // ent try setNextVictim()
+        } // end if (buffer.length != blockSize)
         
-        return true;
+        success = segmentOf(blockId).read(blockId, buffer);
+        
+        if (success && readAhead != null) {
+            readAhead.access(blockId);
+        } // end if (success && readAhead != null)
+        
+        return success;
     } // end read(int, byte[])
     
     
     /**
-     * Writes a block of data to the cache. If the specified block is not
-     *  already in the cache, then an empty slot is sought in which to write
-     *  the data. If no empty slot is available, then a slot is selected for
-     *  replacement using the second-chance (clock) algorithm. If the selected
-     *  slot is dirty, then its contents are written to disk before the new
-     *  block is written into it.
+     * Reads part of a block of data from the cache, without copying the rest
+     *  of the block; see CacheSegment.read(int, int, int, byte[]).
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @param  offset  Position in the block of the first byte to read.
+     * @param  length  Number of bytes to read.
+     * @param  buffer  A data buffer to receive the bytes, from index 0.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   buffer[0 .. length) contains bytes offset .. offset + length of
+     *          the block referenced by blockId, which is resident.
+     * @return true if all operations completed successfully; false if the
+     *          range does not lie within a block, or otherwise.
+     */
+    public boolean read(int blockId, int offset, int length, byte buffer[]) {
+        boolean success;
+        
+        if (offset < 0 || length < 0 || offset + length > blockSize ||
+            length > buffer.length) {
+            return false;
+        } // end if (offset < 0 || ...)
+        
+        success = segmentOf(blockId).read(blockId, offset, length, buffer);
+        
+        if (success && readAhead != null) {
+            readAhead.access(blockId);
+        } // end if (success && readAhead != null)
+        
+        return success;
+    } // end read(int, int, int, byte[])
+    
+    
+    /**
+     * Writes part of a block of data to the cache. If the block is not in the
+     *  cache, it is not read from disk first; see
+     *  CacheSegment.write(int, int, int, byte[]).
+     * @param  blockId  The location of the block on the hard disk to write.
+     * @param  offset  Position in the block of the first byte to write.
+     * @param  length  Number of bytes to write.
+     * @param  buffer  A buffer containing the bytes to write, from index 0.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   The resident cache contains the bytes from the provided buffer
+     *          at offset in the block.
+     * @return true if all operations completed successfully; false if the
+     *          range does not lie within a block, or otherwise.
+     */
+    public boolean write(int blockId, int offset, int length, byte buffer[]) {
+        CacheSegment segment = segmentOf(blockId);
+        boolean      success;
+        
+        if (offset < 0 || length < 0 || offset + length > blockSize ||
+            length > buffer.length) {
+            return false;
+        } // end if (offset < 0 || ...)
+        
+        success = segment.write(blockId, offset, length, buffer);
+        
+        if (flusher != null &&
+            segment.dirtyPercent() > flusher.highPercent()) {
+            flusher.wakeup();
+        } // end if (flusher != null && ...)
+        
+        return success;
+    } // end write(int, int, int, byte[])
+    
+    
+    /**
+     * Pins a block in the cache and returns a view of its cached data, so
+     *  that no copy of the block is made. The block stays resident until it
+     *  is unpinned. See CacheSegment.pin().
+     * @param  blockId  The location of the block on the hard disk to pin.
+     * @param  writable  true for an exclusive, writable view; false for a
+     *                    shared, read-only view.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   If a view was returned, blockId is resident and pinned; the
+     *          view must not be used after the matching call to unpin().
+     * @return A view of the whole block; null if it could not be read.
+     */
+    public ByteBuffer pin(int blockId, boolean writable) {
+        return segmentOf(blockId).pin(blockId, writable);
+    } // end pin(int, boolean)
+    
+    
+    /**
+     * Releases a pin taken by pin(). Releasing a writable pin marks the block
+     *  dirty.
+     * @param  blockId  The location of the pinned block on the hard disk.
+     * @param  writable  Whether the pin being released is writable.
+     * @pre    The calling thread holds a pin of this kind on blockId.
+     * @post   The pin is released; the view must no longer be used.
+     * @return true if the pin was released; false, if blockId is not pinned
+     *          this way.
+     */
+    public boolean unpin(int blockId, boolean writable) {
+        CacheSegment segment = segmentOf(blockId);
+        boolean      success = segment.unpin(blockId, writable);
+        
+        if (writable && flusher != null &&
+            segment.dirtyPercent() > flusher.highPercent()) {
+            flusher.wakeup();
+        } // end if (writable && flusher != null && ...)
+        
+        return success;
+    } // end unpin(int, boolean)
+    
+    
+    /**
+     * Reads several blocks from the cache into one contiguous buffer. Every
+     *  segment involved serves its hits and claims slots for its misses in a
+     *  single acquisition of its monitor; the misses of all segments are then
+     *  read from disk as one batch, in ascending order of block ID, and
+     *  finished in a second acquisition. See transfer().
+     * @param  blockIds  The locations of the blocks on the hard disk to read.
+     * @param  buffer  A data buffer to store the data of the located blocks;
+     *                  the block at position i of blockIds is stored at
+     *                  offset i times the block size.
+     * @pre    Every element of blockIds references a data block on the hard
+     *          disk; buffer holds at least blockIds.length blocks.
+     * @post   The resident cache and buffer[] contain the data of the blocks
+     *          referenced by blockIds; any block that was replaced in the
+     *          resident cache has been written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean readv(int blockIds[], byte buffer[]) {
+        boolean success = transfer(false, blockIds, buffer);
+        
+        if (success && readAhead != null) {
+            for (int i = 0; i < blockIds.length; ++i) {
+                readAhead.access(blockIds[i]);
+            } // end for (; i < blockIds.length; )
+        } // end if (success && readAhead != null)
+        
+        return success;
+    } // end readv(int[], byte[])
+    
+    
+    /**
+     * Writes several blocks from one contiguous buffer to the cache, in the
+     *  same way as readv(); only the old blocks of dirty victims are written
+     *  to disk.
+     * @param  blockIds  The locations of the blocks on the hard disk to write.
+     * @param  buffer  A buffer containing the data to be written; the block
+     *                  at position i of blockIds is taken from offset i times
+     *                  the block size.
+     * @pre    Every element of blockIds references a data block on the hard
+     *          disk; buffer holds at least blockIds.length blocks.
+     * @post   The resident cache contains the data from the provided buffer;
+     *          any block that was replaced in the resident cache has been
+     *          written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean writev(int blockIds[], byte buffer[]) {
+        boolean success = transfer(true, blockIds, buffer);
+        
+        if (flusher != null) {
+            for (int i = 0; i < segments.length; ++i) {
+                if (segments[i].dirtyPercent() > flusher.highPercent()) {
+                    flusher.wakeup();
+                    break;
+                } // end if (segments[i].dirtyPercent() > ...)
+            } // end for (; i < segments.length; )
+        } // end if (flusher != null)
+        
+        return success;
+    } // end writev(int[], byte[])
+    
+    
+    /**
+     * Reads a block into the cache ahead of time; called by the ReadAhead.
+     *  See CacheSegment.prefetch() for the slots that may be used.
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   blockId is resident, unless no clean slot was available or the
+     *          read failed.
+     * @return true if the block was read into the cache; false, otherwise.
+     */
+    public boolean prefetch(int blockId) {
+        return segmentOf(blockId).prefetch(blockId);
+    } // end prefetch(int)
+    
+    
+    /**
+     * Writes a block of data to the cache. The block is written into the
+     *  segment it hashes to; see CacheSegment.write().
      * @param  blockId  The location of the block on the hard disk to write.
      * @param  buffer  A buffer containing data to be written to the specified
      *                  block.
@@ -160,116 +408,487 @@ public class Cache {
      * @post   The resident cache contains the data from the provided buffer;
      *          any block that was replaced in the resident cache has been
      *          written back to the hard disk.
-     * @return true if all operations completed successfully; false, otherwise.
+     * @return true if all operations completed successfully; false if buffer
+     *          is not the size of a block or an operation failed.
      */
-    public synchronized boolean write(int blockId, byte buffer[]) {
-        int count = pageTable.length;
+    public boolean write(int blockId, byte buffer[]) {
+        CacheSegment segment = segmentOf(blockId);
+        boolean      success;
         
-        for (int i = 0; i < count; ++i) {
-            if (pageTable[i].frame == blockId) {
-                // block in cache, write to it and set the dirty bit
-                pageTable[i].reference = true;
-                pageTable[i].dirty     = true;
-                System.arraycopy(buffer, 0, pageTable[i].buffer,
-                                 0, buffer.length);
-                return true;
-            } // end if (pageTable[i].frame == blockId)
-        } // end for(; i < count; )
-        
-        try {   // block not in cache, pick a slot for it
-            setNextVictim();
-            System.arraycopy(buffer, 0, pageTable[nextVictim].buffer,
-                             0, buffer.length);
-            pageTable[nextVictim].frame     = blockId;
-            pageTable[nextVictim].reference = true;
-            pageTable[nextVictim].dirty     = true;
-            nextVictim = (nextVictim + 1) % count;
-        } catch (Exception e) {
+        if (buffer.length != blockSize) {
             return false;
-        } // end try setNextVictim()
+        } // end if (buffer.length != blockSize)
         
-        return true;
+        success = segment.write(blockId, buffer);
+        
+        if (flusher != null &&
+            segment.dirtyPercent() > flusher.highPercent()) {
+            flusher.wakeup();
+        } // end if (flusher != null && ...)
+        
+        return success;
     } // end write(int, byte[])
     
     
     /**
      * Writes all modified blocks in cache back to disk. All data in the cache
-     *  remain valid.
+     *  remain valid. The blocks are written in ascending order of block ID,
+     *  so the disk arm makes a single sweep; see writeBackAll().
      * @pre    None.
      * @post   All dirty blocks have been written from cache to disk; all dirty
      *          bits are set to false.
      */
     public void sync() {
-        int count = pageTable.length;
-        
-        for (int i = 0; i < count; ++i) {
-            if (pageTable[i].dirty) {
-                try {
-                    SysLib.rawwrite(pageTable[i].frame, pageTable[i].buffer);
-                    pageTable[i].dirty = false;
-                } catch (Exception e) { }
-            } // end if (pageTable[i].dirty)
-        } // end for(; i < count; )
-        
+        stats.add(CacheStats.SYNC_WRITEBACKS, writeBackAll());
         SysLib.sync();
     } // end sync()
     
     
     /**
      * Writes all modified blocks in cache back to disk. All data in the cache
-     *  are invalidated.
+     *  are invalidated, except for slots that are filled or modified by other
+     *  threads while this call is writing back. The blocks are written in
+     *  ascending order of block ID; see writeBackAll(). The resident blocks
+     *  are first recorded in the manifest, if there is one.
      * @pre    None.
      * @post   All dirty blocks have been written from cache to disk; all cache
      *          blocks are reset to default values.
      */
     public void flush() {
-        int count = pageTable.length;
+        saveManifest();
+        stats.add(CacheStats.FLUSH_WRITEBACKS, writeBackAll());
         
-        for (int i = 0; i < count; ++i) {
-            if (pageTable[i].dirty) {
-                try {
-                    SysLib.rawwrite(pageTable[i].frame, pageTable[i].buffer);
-                    pageTable[i].dirty = false;
-                } catch (Exception e) { }
-            } // end if (pageTable[i].dirty)
-            
-            pageTable[i].frame     = -1;
-            pageTable[i].reference = false;
-        } // end for(; i < count; )
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i].invalidate();
+        } // end for (; i < segments.length; )
         
-        nextVictim = 0;
         SysLib.sync();
     } // end flush()
     
     
     /**
-     * Sets the index of the next victim for replacement. It is assumed that no
-     *  slots are skipped as the cache is filled, so it is safe to search for
-     *  an empty slot from the last potential victim.
+     * Writes dirty blocks back to disk in the background; called by the
+     *  CacheFlusher. See CacheSegment.clean() for the selection of blocks.
+     * @param  highPercent  Dirty percentage of a segment above which blocks
+     *                       are written regardless of age.
+     * @param  lowPercent  Dirty percentage to write such a segment down to.
+     * @param  maxAge  Age, in milliseconds, after which a dirty block is
+     *                  always written.
+     * @pre    0 <= lowPercent <= highPercent <= 100.
+     * @post   Aged dirty blocks, and enough others to bring every segment to
+     *          lowPercent, have been written back; all data remain valid.
+     * @return The number of blocks written back.
+     */
+    public int clean(int highPercent, int lowPercent, long maxAge) {
+        int cleaned = 0;
+        
+        for (int i = 0; i < segments.length; ++i) {
+            cleaned += segments[i].clean(highPercent, lowPercent, maxAge);
+        } // end for (; i < segments.length; )
+        
+        stats.add(CacheStats.CLEAN_WRITEBACKS, cleaned);
+        
+        return cleaned;
+    } // end clean(int, int, long)
+    
+    
+    /**
+     * Attaches a background flusher, which is woken whenever a write leaves
+     *  a segment above its high watermark.
+     * @param  flusher  The flusher writing back this Cache; null to detach.
      * @pre    None.
-     * @post   nextVictim has been set to the index of a slot that is either
-     *          empty or contains the best candidate for replacement; if a slot
-     *          was replaced, then its data were first written back to disk.
-     */
-    private void setNextVictim() {
-        int count = pageTable.length;
-        
-        for (int i = nextVictim; i < count; ++i) {
-            if (pageTable[i].frame == -1) {
-                pageTable[i].reference = false;    // to bypass next loop
-                nextVictim = i;
-                break;
-            } // end if (pageTable[i].frame == -1)
-        } // end for 
-        
-        while(pageTable[nextVictim].reference) {
-            pageTable[nextVictim].reference = false;
-            nextVictim = (nextVictim + 1) % count;
-        } // end while(pageTable[nextVictim].reference)
-
-        if (pageTable[nextVictim].dirty) {
-            SysLib.rawwrite(pageTable[nextVictim].frame,
-                            pageTable[nextVictim].buffer);
-        } // end if (pageTable[nextVictim].dirty)
-    } // end setNextVictim()
+     * @post   Writes wake flusher when needed.
+     */
+    public void setFlusher(CacheFlusher flusher) {
+        this.flusher = flusher;
+    } // end setFlusher(CacheFlusher)
+    
+    
+    /**
+     * Attaches a read-ahead daemon, which is told of every successful read.
+     * @param  readAhead  The ReadAhead prefetching for this Cache; null to
+     *                     detach.
+     * @pre    None.
+     * @post   Reads are reported to readAhead.
+     */
+    public void setReadAhead(ReadAhead readAhead) {
+        this.readAhead = readAhead;
+    } // end setReadAhead(ReadAhead)
+    
+    
+    /**
+     * Attaches a manifest, in which the resident blocks are recorded by
+     *  saveManifest() and flush().
+     * @param  manifest  The manifest of this Cache; null to detach.
+     * @pre    None.
+     * @post   flush() records the resident blocks in manifest.
+     */
+    public void setManifest(CacheManifest manifest) {
+        this.manifest = manifest;
+    } // end setManifest(CacheManifest)
+    
+    
+    /**
+     * Records the resident blocks in the manifest, e.g. before a shutdown.
+     *  Nothing is recorded if there is no manifest or no block is resident,
+     *  so a cache that was just flushed keeps the record taken by the flush.
+     * @pre    None.
+     * @post   The manifest, if any, lists the blocks of hotBlocks().
+     * @return true if the manifest was written or had nothing new to record;
+     *          false, if writing it failed.
+     */
+    public boolean saveManifest() {
+        int[] blocks;
+        
+        if (manifest == null) {
+            return true;
+        } // end if (manifest == null)
+        
+        blocks = hotBlocks();
+        return blocks.length == 0 || manifest.save(blocks);
+    } // end saveManifest()
+    
+    
+    /**
+     * Lists the blocks resident in this Cache, hottest first. Each segment
+     *  orders its own blocks by last use; the lists are interleaved, one
+     *  block of each segment in turn, since block IDs are spread evenly over
+     *  the segments.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The IDs of the resident blocks that were used since they were
+     *          read in, most recently used first.
+     */
+    public int[] hotBlocks() {
+        int[][] lists = new int[segments.length][];
+        int     total = 0;
+        int[]   blocks;
+        
+        for (int i = 0; i < segments.length; ++i) {
+            lists[i]  = segments[i].hotBlocks();
+            total    += lists[i].length;
+        } // end for (; i < segments.length; )
+        
+        blocks = new int[total];
+        
+        for (int rank = 0, count = 0; count < total; ++rank) {
+            for (int i = 0; i < segments.length; ++i) {
+                if (rank < lists[i].length) {
+                    blocks[count++] = lists[i][rank];
+                } // end if (rank < lists[i].length)
+            } // end for (; i < segments.length; )
+        } // end for (; count < total; )
+        
+        return blocks;
+    } // end hotBlocks()
+    
+    
+    /**
+     * Turns clean-first victim selection on or off in every segment; see
+     *  CacheSegment.setCleanFirst(). With it on, a miss prefers a victim that
+     *  needs no write-back, so it seldom waits for a synchronous write before
+     *  its own read; CacheStats.WRITEBACK_STALLS counts the misses that still
+     *  do.
+     * @param  window  Largest number of probes of a clean-first search; 0
+     *                  turns clean-first selection off.
+     * @param  dirtyWeight  Sweeps of the slots, in victim searches per slot,
+     *                       for which a dirty slot is passed over.
+     * @pre    window >= 0; dirtyWeight >= 0.
+     * @post   Later misses in every segment use the new settings.
+     */
+    public void setCleanFirst(int window, int dirtyWeight) {
+        for (CacheSegment segment : segments) {
+            segment.setCleanFirst(window, dirtyWeight);
+        } // end for (segment : segments)
+    } // end setCleanFirst(int, int)
+    
+    
+    /**
+     * Reports the event counters of this Cache: hits, misses, evictions,
+     *  write-backs, victim search lengths and read-ahead outcomes. The
+     *  counters are updated without locking and may be read at any time.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The counters shared by all segments.
+     */
+    public CacheStats stats() {
+        return stats;
+    } // end stats()
+    
+    
+    /**
+     * Reports the number of slots in this Cache.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The number of blocks the resident cache can hold.
+     */
+    public int capacity() {
+        int total = 0;
+        
+        for (int i = 0; i < segments.length; ++i) {
+            total += segments[i].capacity();
+        } // end for (; i < segments.length; )
+        
+        return total;
+    } // end capacity()
+    
+    
+    /**
+     * Changes the number of slots of this Cache while it is in use. The new
+     *  number is divided among the segments as in the constructor, and each
+     *  segment is resized in turn; see CacheSegment.resize(). Only the slots
+     *  being removed are written back and evicted; every other slot keeps its
+     *  block and its replacement state.
+     * @param  cacheBlocks  New number of blocks to store in the resident
+     *                       cache.
+     * @pre    None.
+     * @post   The resident cache holds cacheBlocks blocks, unless a
+     *          write-back failed.
+     * @return true if every segment was resized; false if cacheBlocks is
+     *          smaller than the number of segments, or a write-back failed.
+     */
+    public synchronized boolean resize(int cacheBlocks) {
+        boolean success = true;
+        
+        if (cacheBlocks < segments.length) {
+            return false;
+        } // end if (cacheBlocks < segments.length)
+        
+        for (int i = 0; i < segments.length; ++i) {
+            success &= segments[i].resize(cacheBlocks / segments.length +
+                                          (i < cacheBlocks % segments.length
+                                           ? 1 : 0));
+        } // end for (; i < segments.length; )
+        
+        return success;
+    } // end resize(int)
+    
+    
+    /**
+     * Reports the number of segments this Cache is divided into.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The number of independently locked segments.
+     */
+    public int segmentCount() {
+        return segments.length;
+    } // end segmentCount()
+    
+    
+    /**
+     * Writes every dirty block of every segment back to disk as one batch.
+     *  All dirty slots are first marked busy, then written in ascending order
+     *  of block ID regardless of segment or slot, and each slot is released
+     *  as soon as its own write has completed. Block IDs and batch positions
+     *  are packed into longs so the batch is sorted without boxing.
+     * @pre    None.
+     * @post   Every block that was dirty when this method was called has been
+     *          written back, unless its write failed or it was modified again
+     *          after being written.
+     * @return The number of blocks written successfully.
+     */
+    private int writeBackAll() {
+        int[][] slots = new int[segments.length][];
+        int[]   owner;      // segment of each batch position
+        int[]   slot;       // slot of each batch position
+        long[]  order;      // block ID << 32 | batch position
+        int     total   = 0;
+        int     written = 0;
+        
+        for (int i = 0; i < segments.length; ++i) {
+            slots[i] = segments[i].beginWriteBack();
+            total   += slots[i].length;
+        } // end for (; i < segments.length; )
+        
+        owner = new int[total];
+        slot  = new int[total];
+        order = new long[total];
+        total = 0;
+        
+        for (int i = 0; i < segments.length; ++i) {
+            for (int j = 0; j < slots[i].length; ++j) {
+                owner[total] = i;
+                slot[total]  = slots[i][j];
+                order[total] = ((long)segments[i].frameOf(slots[i][j]) << 32) |
+                               total;
+                ++total;
+            } // end for (; j < slots[i].length; )
+        } // end for (; i < segments.length; )
+        
+        java.util.Arrays.sort(order);
+        
+        for (int i = 0; i < total; ++i) {
+            int          k       = (int)order[i];
+            CacheSegment segment = segments[owner[k]];
+            
+            if (segment.writeBackSlot(slot[k])) {
+                segment.endWriteBack(slot[k], true);
+                ++written;
+            } // end if (segment.writeBackSlot(slot[k]))
+            else {
+                segment.endWriteBack(slot[k], false);
+            } // end else (write failed)
+        } // end for (; i < total; )
+        
+        return written;
+    } // end writeBackAll()
+    
+    
+    /**
+     * Performs a vectored read or write. The positions of the vector are
+     *  grouped by segment and handed to CacheSegment.beginBatch(), which
+     *  serves what it can without disk I/O. The write-backs of dirty victims
+     *  and then the reads of missing blocks are issued in ascending order of
+     *  block ID over all segments, and the claimed slots are finished with
+     *  CacheSegment.endBatch(). Positions that a segment deferred, because
+     *  their block was in flight, are performed one at a time at the end.
+     * @param  isWrite  true for writev(); false for readv().
+     * @param  blockIds  The locations of the blocks on the hard disk.
+     * @param  buffer  Contiguous user buffer of blockIds.length blocks.
+     * @pre    None.
+     * @post   As for readv() or writev().
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    private boolean transfer(boolean isWrite, int blockIds[], byte buffer[]) {
+        int       count   = blockIds.length;
+        int[]     owner   = new int[count];     // segment of each position
+        int[]     fill    = new int[segments.length];
+        int[][]   items   = new int[segments.length][];
+        int[][]   slots   = new int[segments.length][];
+        int[]     slot    = new int[count];     // claimed slot of each position
+        boolean[] written = new boolean[count];
+        boolean[] read    = new boolean[count];
+        long[]    order   = new long[count];    // block ID << 32 | position
+        int       pending = 0;
+        boolean   success = true;
+        
+        if (buffer.length < count * blockSize) {
+            return false;
+        } // end if (buffer.length < count * blockSize)
+        
+        for (int i = 0; i < count; ++i) {
+            owner[i] = segmentIndex(blockIds[i]);
+            ++fill[owner[i]];
+        } // end for (; i < count; )
+        
+        for (int i = 0; i < segments.length; ++i) {
+            items[i] = new int[fill[i]];
+            slots[i] = new int[fill[i]];
+            fill[i]  = 0;
+        } // end for (; i < segments.length; )
+        
+        for (int i = 0; i < count; ++i) {
+            items[owner[i]][fill[owner[i]]++] = i;
+        } // end for (; i < count; )
+        
+        for (int i = 0; i < segments.length; ++i) {
+            if (fill[i] > 0) {
+                segments[i].beginBatch(isWrite, blockIds, items[i], fill[i],
+                                       buffer, slots[i]);
+                
+                for (int j = 0; j < fill[i]; ++j) {
+                    slot[items[i][j]] = slots[i][j];
+                } // end for (; j < fill[i]; )
+            } // end if (fill[i] > 0)
+        } // end for (; i < segments.length; )
+        
+        // write back the old blocks of dirty victims, in block order
+        for (int i = 0; i < count; ++i) {
+            written[i] = true;
+            
+            if (slot[i] >= 0 && segments[owner[i]].frameOf(slot[i]) != -1) {
+                order[pending++] =
+                    ((long)segments[owner[i]].frameOf(slot[i]) << 32) | i;
+            } // end if (slot[i] >= 0 && ...)
+        } // end for (; i < count; )
+        
+        java.util.Arrays.sort(order, 0, pending);
+        
+        for (int i = 0; i < pending; ++i) {
+            int k = (int)order[i];
+            
+            written[k] = segments[owner[k]].writeBackSlot(slot[k]);
+        } // end for (; i < pending; )
+        
+        // then read the missing blocks, in block order
+        if (!isWrite) {
+            pending = 0;
+            
+            for (int i = 0; i < count; ++i) {
+                if (slot[i] >= 0 && written[i]) {
+                    order[pending++] = ((long)blockIds[i] << 32) | i;
+                } // end if (slot[i] >= 0 && written[i])
+            } // end for (; i < count; )
+            
+            java.util.Arrays.sort(order, 0, pending);
+            
+            for (int i = 0; i < pending; ++i) {
+                int k = (int)order[i];
+                
+                read[k] = segments[owner[k]].readSlot(slot[k], blockIds[k]);
+            } // end for (; i < pending; )
+        } // end if (!isWrite)
+        
+        for (int i = 0; i < segments.length; ++i) {
+            if (fill[i] > 0 &&
+                !segments[i].endBatch(isWrite, blockIds, items[i], fill[i],
+                                      buffer, slots[i], written, read)) {
+                success = false;
+            } // end if (fill[i] > 0 && ...)
+        } // end for (; i < segments.length; )
+        
+        // finally, the blocks that were in flight, one at a time
+        for (int i = 0; i < count; ++i) {
+            if (slot[i] == CacheSegment.BATCH_DEFERRED) {
+                byte[] block = new byte[blockSize];
+                
+                if (isWrite) {
+                    System.arraycopy(buffer, i * blockSize, block, 0,
+                                     blockSize);
+                    success &= segments[owner[i]].write(blockIds[i], block);
+                } // end if (isWrite)
+                else if (segments[owner[i]].read(blockIds[i], block)) {
+                    System.arraycopy(block, 0, buffer, i * blockSize,
+                                     blockSize);
+                } // end else if (segments[owner[i]].read(...))
+                else {
+                    success = false;
+                } // end else (read failed)
+            } // end if (slot[i] == CacheSegment.BATCH_DEFERRED)
+        } // end for (; i < count; )
+        
+        return success;
+    } // end transfer(boolean, int[], byte[])
+    
+    
+    /**
+     * Selects the segment responsible for a block. The block ID is scrambled
+     *  first so that runs of consecutive blocks are spread over all segments.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The segment that caches blockId.
+     */
+    private CacheSegment segmentOf(int blockId) {
+        return segments[segmentIndex(blockId)];
+    } // end segmentOf(int)
+    
+    
+    /**
+     * Selects the index of the segment responsible for a block; see
+     *  segmentOf().
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This Cache is unchanged.
+     * @return The index in segments of the segment that caches blockId.
+     */
+    private int segmentIndex(int blockId) {
+        if (segments.length == 1) {
+            return 0;
+        } // end if (segments.length == 1)
+        
+        int h = blockId * 0x85EBCA6B;
+        
+        return ((h ^ (h >>> 15)) & 0x7FFFFFFF) % segments.length;
+    } // end segmentIndex(int)
 } // end class Cache
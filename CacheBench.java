@@ -0,0 +1,378 @@
+/*
+ * @file    CacheBench.java
+ * @brief   This class is a throughput benchmark for the block cache. It builds
+ *           private Cache instances and fills each with a working set of
+ *           disk blocks, about nine tenths of the smaller of its slots and
+ *           the disk. Block IDs hash unevenly over segments, so the cache
+ *           counters are checked after the fill: if any segment had to evict,
+ *           the working set is shrunk and the fill repeated. A growing number
+ *           of threads then read and write random blocks of the working set,
+ *           and any miss during the run is reported. The number of operations
+ *           completed per millisecond is printed to standard out for each
+ *           combination of segment count and thread count, so that the
+ *           scaling of a segmented cache can be compared against a single-lock
+ *           cache. The reads alone are then timed with a ReadAhead attached,
+ *           which is told of every read as in the kernel. Because every access
+ *           hits, the hard disk is never touched. It then times the clock
+ *           victim search alone at 10k to 1M slots, over the packed per-slot
+ *           bits kept by CacheSegment and ClockPolicy and over one object per
+ *           slot, the layout the cache used before, with the same hits and the
+ *           same busy slots in both.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class CacheBench extends Thread {
+    private final static int BLOCK_SIZE  = 512,     // block size of disk
+                             DISK_BLOCKS = 1000,    // blocks on the disk
+                             SLOTS       = 4096,    // default cache slots
+                             THREADS     = 8,       // default thread limit
+                             OPS         = 200000,  // operations per thread
+                             VICTIMS     = 200000,  // victims per scan run
+                             HITS        = 8,       // hits between victims
+                             BUSY        = 100;     // 1 in BUSY slots busy
+    private final static int[] SCAN_SLOTS = { 10000, 100000, 1000000 };
+    private int slots;          // cache slots in each benchmarked Cache
+    private int maxThreads;     // largest number of concurrent threads
+    
+    
+    /*
+    * @brief   This class is the slot metadata of the cache as it was before
+    *           it was packed into arrays and bits: one object per slot, which
+    *           a victim search reaches through an array of references.
+    */
+    private static class Entry {
+        public int     frame;       // hard disk index of cached block
+        public boolean reference;   // recent access bit
+        public boolean resident;    // whether the slot holds a block
+        public boolean busy;        // disk I/O in flight on this slot
+        public boolean flushing;    // background write-back in flight
+        public int     pins;        // read-only views handed out
+    } // end class Entry
+    
+    
+    /*
+    * @brief   This class holds the packed evictability flags of a segment,
+    *           as CacheSegment does, for a ClockPolicy under test.
+    */
+    private static class PackedSlots implements ReplacementPolicy.Slots {
+        public SlotBits busy;       // disk I/O in flight
+        public SlotBits flushing;   // background write-back in flight
+        public SlotBits pinned;     // read-only views handed out
+        
+        
+        /**
+         * Initializes the flags of a given number of slots, all clear.
+         * @param  slots  Number of slots.
+         * @pre    slots > 0.
+         * @post   No slot is busy, flushing or pinned.
+         */
+        public PackedSlots(int slots) {
+            busy     = new SlotBits(slots);
+            flushing = new SlotBits(slots);
+            pinned   = new SlotBits(slots);
+        } // end constructor
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#evictable(int)
+         */
+        public boolean evictable(int slot) {
+            return !busy.get(slot) && !flushing.get(slot) &&
+                   !pinned.get(slot);
+        } // end evictable(int)
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#evictableWord(int)
+         */
+        public long evictableWord(int word) {
+            return ~(busy.word(word) | flushing.word(word) |
+                     pinned.word(word));
+        } // end evictableWord(int)
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#exhausted()
+         */
+        public boolean exhausted() {
+            return false;
+        } // end exhausted()
+    } // end class PackedSlots
+    
+    
+    /**
+     * Sets up the size of the benchmark.
+     * @param  args  Optional arguments. If present, the first element is the
+     *                number of cache slots and the second element is the
+     *                largest number of concurrent threads to run.
+     * @pre    None.
+     * @post   The benchmark is ready to be run.
+     */
+    public CacheBench(String[] args) {
+        slots      = (args.length > 0) ? Integer.parseInt(args[0]) : SLOTS;
+        maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : THREADS;
+    } // end constructor
+    
+    
+    /**
+     * Runs the benchmark for 1, 2, 4, ... maxThreads threads, first against a
+     *  single-segment Cache and then against a Cache with one segment per
+     *  thread of the largest run.
+     * @pre    None.
+     * @post   Throughput figures are printed to standard out.
+     */
+    @Override
+    public void run() {
+        int[] segmentCounts = { 1, maxThreads };
+        
+        measure(1, 1, false);       // warm up the cache code
+        
+        for (int s = 0; s < segmentCounts.length; ++s) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                SysLib.cout("  " + segmentCounts[s] + " segment(s), " +
+                            threads + " thread(s): " +
+                            measure(segmentCounts[s], threads, false) +
+                            " ops/ms\n");
+            } // end for (; threads <= maxThreads; )
+        } // end for (; s < segmentCounts.length; )
+        
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SysLib.cout("  " + maxThreads + " segment(s), " + threads +
+                        " thread(s), reads with read-ahead: " +
+                        measure(maxThreads, threads, true) + " ops/ms\n");
+        } // end for (; threads <= maxThreads; )
+        
+        for (int i = 0; i < SCAN_SLOTS.length; ++i) {
+            measureScan(SCAN_SLOTS[i], false);  // warm up both searches
+            measureScan(SCAN_SLOTS[i], true);
+            SysLib.cout("  victim search, " + SCAN_SLOTS[i] + " slots: " +
+                        measureScan(SCAN_SLOTS[i], false) +
+                        " ns objects, " +
+                        measureScan(SCAN_SLOTS[i], true) +
+                        " ns packed\n");
+        } // end for (; i < SCAN_SLOTS.length; )
+        
+        SysLib.exit();
+    } // end run()
+    
+    
+    /**
+     * Measures the hit throughput of one Cache configuration. With
+     *  read-ahead, every operation is a read, each reported to a ReadAhead
+     *  as Cache.read() does in the kernel; otherwise, one in eight is a
+     *  write. Every operation targets the working set left by fill(); if any
+     *  of them still misses, the number of misses is printed.
+     * @param  segmentCount  Number of segments in the Cache under test.
+     * @param  threads  Number of threads accessing it concurrently.
+     * @param  readAhead  Whether to attach a ReadAhead and only read.
+     * @pre    segmentCount > 0; threads > 0.
+     * @post   A private Cache has been filled and exercised.
+     * @return Operations completed per millisecond over all threads.
+     */
+    private long measure(int segmentCount, int threads,
+                         final boolean readAhead) {
+        Cache       built  = null;
+        int         count  = Math.min(slots, DISK_BLOCKS) * 9 / 10;
+        Thread[]    worker = new Thread[threads];
+        long        misses;
+        long        start;
+        long        elapsed;
+        
+        while (built == null) {
+            built = new Cache(BLOCK_SIZE, slots, segmentCount);
+            
+            if (!fill(built, count)) {
+                built = null;
+                count = count * 9 / 10;     // a segment overflowed
+            } // end if (!fill(built, count))
+        } // end while (built == null)
+        
+        final Cache cache  = built;
+        final int   blocks = count;
+        
+        if (readAhead) {
+            ReadAhead daemon = new ReadAhead(cache, blocks, blocks);
+            
+            cache.setReadAhead(daemon);
+            daemon.start();
+        } // end if (readAhead)
+        
+        for (int t = 0; t < threads; ++t) {
+            final int seed = t;
+            
+            worker[t] = new Thread() {
+                public void run() {
+                    java.util.Random target = new java.util.Random(seed);
+                    byte[]           data   = new byte[BLOCK_SIZE];
+                    
+                    for (int i = 0; i < OPS; ++i) {
+                        if ((i & 7) == 0 && !readAhead) {
+                            cache.write(target.nextInt(blocks), data);
+                        } // end if ((i & 7) == 0 && !readAhead)
+                        else {
+                            cache.read(target.nextInt(blocks), data);
+                        } // end else ((i & 7) != 0 || readAhead)
+                    } // end for (; i < OPS; )
+                } // end run()
+            }; // end worker[t]
+        } // end for (; t < threads; )
+        
+        misses = missCount(cache);
+        start  = System.nanoTime();
+        
+        for (int t = 0; t < threads; ++t) {
+            worker[t].start();
+        } // end for (; t < threads; )
+        
+        for (int t = 0; t < threads; ++t) {
+            try {
+                worker[t].join();
+            } catch (InterruptedException e) { }
+        } // end for (; t < threads; )
+        
+        elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+        misses  = missCount(cache) - misses;
+        
+        if (misses > 0) {
+            SysLib.cout("  (" + misses + " of the accesses below missed)\n");
+        } // end if (misses > 0)
+        
+        return (long)OPS * threads / elapsed;
+    } // end measure(int, int, boolean)
+    
+    
+    /**
+     * Writes a working set of blocks into a new Cache and reads them all
+     *  back, checking the counters of the cache that nothing was evicted and
+     *  nothing missed. Block IDs are spread over segments by a hash, so a
+     *  segment may be asked to hold more than its share.
+     * @param  cache  A new Cache.
+     * @param  blocks  Number of blocks in the working set, from block 0.
+     * @pre    0 < blocks <= DISK_BLOCKS.
+     * @post   Blocks 0 to blocks - 1 have been written to cache.
+     * @return true if every block of the working set is resident; false, if
+     *          some segment could not hold its share.
+     */
+    private boolean fill(Cache cache, int blocks) {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        
+        for (int i = 0; i < blocks; ++i) {
+            cache.write(i, buffer);
+        } // end for (; i < blocks; )
+        
+        for (int i = 0; i < blocks; ++i) {
+            cache.read(i, buffer);
+        } // end for (; i < blocks; )
+        
+        return cache.stats().get(CacheStats.EVICTIONS) == 0 &&
+               cache.stats().get(CacheStats.READ_MISSES) == 0;
+    } // end fill(Cache, int)
+    
+    
+    /**
+     * Counts the accesses to a Cache that had to claim a slot.
+     * @param  cache  The Cache under test.
+     * @pre    None.
+     * @post   cache is unchanged.
+     * @return The number of read and write misses so far.
+     */
+    private long missCount(Cache cache) {
+        return cache.stats().get(CacheStats.READ_MISSES) +
+               cache.stats().get(CacheStats.WRITE_MISSES);
+    } // end missCount(Cache)
+    
+    
+    /**
+     * Measures the clock victim search over one slot layout. Every slot is
+     *  resident and one in BUSY of them is busy; each victim is preceded by
+     *  HITS hits on random slots, and refilled once it is chosen. The same
+     *  seed is used for both layouts, so they see the same accesses.
+     * @param  slots  Number of slots.
+     * @param  packed  true for the packed bits of ClockPolicy and
+     *                  CacheSegment; false for one object per slot.
+     * @pre    slots > 0.
+     * @post   None.
+     * @return Average nanoseconds per victim, hits and refill included.
+     */
+    private long measureScan(int slots, boolean packed) {
+        java.util.Random target = new java.util.Random(slots);
+        int[]            hits   = new int[HITS * 1024];
+        ClockPolicy      policy = null;
+        PackedSlots      flags  = null;
+        Entry[]          table  = null;
+        int              hand   = 0;
+        long             start;
+        
+        for (int i = 0; i < hits.length; ++i) {
+            hits[i] = target.nextInt(slots);
+        } // end for (; i < hits.length; )
+        
+        if (packed) {
+            policy = new ClockPolicy(slots);
+            flags  = new PackedSlots(slots);
+            
+            for (int i = 0; i < slots; ++i) {
+                policy.fill(i, i);
+                
+                if (target.nextInt(BUSY) == 0) {
+                    flags.busy.set(i);
+                } // end if (target.nextInt(BUSY) == 0)
+            } // end for (; i < slots; )
+        } // end if (packed)
+        else {
+            table = new Entry[slots];
+            
+            for (int i = 0; i < slots; ++i) {
+                table[i]           = new Entry();
+                table[i].frame     = i;
+                table[i].reference = true;
+                table[i].resident  = true;
+                table[i].busy      = target.nextInt(BUSY) == 0;
+            } // end for (; i < slots; )
+        } // end else (!packed)
+        
+        start = System.nanoTime();
+        
+        for (int v = 0; v < VICTIMS; ++v) {
+            int victim = -1;
+            
+            for (int h = 0; h < HITS; ++h) {
+                int slot = hits[(v * HITS + h) % hits.length];
+                
+                if (packed) {
+                    policy.hit(slot);
+                } // end if (packed)
+                else {
+                    table[slot].reference = true;
+                } // end else (!packed)
+            } // end for (; h < HITS; )
+            
+            if (packed) {
+                victim = policy.victim(v, flags);
+                policy.fill(victim, v);
+                continue;
+            } // end if (packed)
+            
+            // the sweep of the clock before the bits were packed
+            for (int i = 0; i < 2 * slots && victim == -1; ++i) {
+                Entry entry = table[hand];
+                
+                if (entry.resident && !entry.busy && !entry.flushing &&
+                    entry.pins == 0) {
+                    if (!entry.reference) {
+                        victim = hand;
+                    } // end if (!entry.reference)
+                    
+                    entry.reference = false;
+                } // end if (entry.resident && ...)
+                
+                hand = (hand + 1) % slots;
+            } // end for (; i < 2 * slots && victim == -1; )
+            
+            table[victim].frame     = v;
+            table[victim].reference = true;
+        } // end for (; v < VICTIMS; )
+        
+        return (System.nanoTime() - start) / VICTIMS;
+    } // end measureScan(int, boolean)
+} // end class CacheBench
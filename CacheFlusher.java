@@ -0,0 +1,93 @@
+/*
+ * @file    CacheFlusher.java
+ * @brief   This class is a kernel daemon that writes dirty cache blocks back
+ *           to disk in the background, so that misses rarely have to write
+ *           back a dirty victim before reading their own block. It wakes up
+ *           periodically to write back blocks that have been dirty for longer
+ *           than a maximum age, and it is woken early by the cache whenever a
+ *           segment has more dirty slots than a high watermark allows; it then
+ *           writes blocks back until the segment is down to a low watermark.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class CacheFlusher extends Thread {
+    private Cache   cache;          // cache whose dirty blocks are written
+    private int     highPercent;    // dirty percentage that wakes the flusher
+    private int     lowPercent;     // dirty percentage to write down to
+    private long    maxAge;         // ms a block may stay dirty
+    private long    interval;       // ms between periodic passes
+    private boolean pending;        // whether a pass was requested early
+    
+    
+    /**
+     * Initializes a CacheFlusher for a cache. The thread is a daemon, so it
+     *  does not keep ThreadOS alive, and it must still be started.
+     * @param  cache  The cache to write back.
+     * @param  highPercent  Percentage of dirty slots in a segment above which
+     *                       a pass is started immediately.
+     * @param  lowPercent  Percentage of dirty slots a pass writes down to.
+     * @param  maxAge  Longest time, in milliseconds, a block should stay
+     *                  dirty; periodic passes run twice per maxAge.
+     * @pre    cache is not null; 0 <= lowPercent <= highPercent <= 100;
+     *          maxAge > 0.
+     * @post   A CacheFlusher is ready to be started.
+     */
+    public CacheFlusher(Cache cache, int highPercent, int lowPercent,
+                        long maxAge) {
+        this.cache       = cache;
+        this.highPercent = highPercent;
+        this.lowPercent  = Math.min(lowPercent, highPercent);
+        this.maxAge      = maxAge;
+        interval         = Math.max(1, maxAge / 2);
+        pending          = false;
+        setDaemon(true);
+    } // end constructor
+    
+    
+    /**
+     * Reports the high watermark of this CacheFlusher.
+     * @pre    None.
+     * @post   This CacheFlusher is unchanged.
+     * @return The dirty percentage above which a pass is started early.
+     */
+    public int highPercent() {
+        return highPercent;
+    } // end highPercent()
+    
+    
+    /**
+     * Requests a pass as soon as possible, e.g. because a high watermark has
+     *  been exceeded.
+     * @pre    None.
+     * @post   The flusher thread will start a pass without waiting for its
+     *          periodic timer.
+     */
+    public synchronized void wakeup() {
+        pending = true;
+        notify();
+    } // end wakeup()
+    
+    
+    /**
+     * Runs passes over the cache forever, each after either the periodic
+     *  interval or an early wakeup.
+     * @pre    None.
+     * @post   Does not return.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (!pending) {
+                    try {
+                        wait(interval);
+                    } catch (InterruptedException e) { }
+                } // end if (!pending)
+                
+                pending = false;
+            } // end synchronized (this)
+            
+            cache.clean(highPercent, lowPercent, maxAge);
+        } // end while (true)
+    } // end run()
+} // end class CacheFlusher
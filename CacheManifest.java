@@ -0,0 +1,138 @@
+/*
+ * @file    CacheManifest.java
+ * @brief   This class keeps a record of the blocks resident in a cache, most
+ *           recently used first, in a file on the host next to the disk
+ *           image, so that it outlives ThreadOS. The cache writes it when it
+ *           is flushed and at shutdown, and after the next boot a CacheWarmer
+ *           reads it back and prefetches the blocks, so the working set is
+ *           not faulted in one miss at a time. The file holds a magic number,
+ *           the number of blocks and their IDs, as big-endian ints; it is
+ *           written to a temporary file first and renamed over the old one,
+ *           so a crash while saving leaves the previous record intact.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+public class CacheManifest {
+    private final static int MAGIC = 0x43414348;    // "CACH"
+    private File             file;          // the record
+    private File             temp;          // the record being written
+    
+    
+    /**
+     * Initializes a CacheManifest kept in a given file. The file is neither
+     *  read nor created until load() or save() is called.
+     * @param  path  Name of the file on the host.
+     * @pre    path is not null.
+     * @post   A CacheManifest for path is ready to be used.
+     */
+    public CacheManifest(String path) {
+        file = new File(path);
+        temp = new File(path + ".tmp");
+    } // end constructor
+    
+    
+    /**
+     * Records a list of blocks, replacing any earlier record.
+     * @param  blocks  IDs of the resident blocks, hottest first.
+     * @pre    blocks is not null.
+     * @post   The file lists blocks, or is unchanged if writing failed.
+     * @return true if the record was written; false, otherwise.
+     */
+    public synchronized boolean save(int blocks[]) {
+        DataOutputStream out = null;
+        
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                                           new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(blocks.length);
+            
+            for (int i = 0; i < blocks.length; ++i) {
+                out.writeInt(blocks[i]);
+            } // end for (; i < blocks.length; )
+            
+            out.close();
+            out = null;
+            
+            // some hosts do not rename over an existing file
+            return temp.renameTo(file) ||
+                   (file.delete() && temp.renameTo(file));
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(out);
+        } // end try out.writeInt(...)
+    } // end save(int[])
+    
+    
+    /**
+     * Reads the last record of blocks. A missing or damaged file is taken
+     *  as an empty record.
+     * @pre    None.
+     * @post   The file is unchanged.
+     * @return IDs of the blocks that were resident, hottest first; an empty
+     *          array if there is no valid record.
+     */
+    public synchronized int[] load() {
+        DataInputStream in = null;
+        
+        if (!file.isFile()) {
+            return new int[0];
+        } // end if (!file.isFile())
+        
+        try {
+            int   count;
+            int[] blocks;
+            
+            in = new DataInputStream(new BufferedInputStream(
+                                         new FileInputStream(file)));
+            
+            if (in.readInt() != MAGIC) {
+                return new int[0];
+            } // end if (in.readInt() != MAGIC)
+            
+            count = in.readInt();
+            
+            if (count < 0 || count > (file.length() - 8) / 4) {
+                return new int[0];
+            } // end if (count < 0 || ...)
+            
+            blocks = new int[count];
+            
+            for (int i = 0; i < count; ++i) {
+                blocks[i] = in.readInt();
+            } // end for (; i < count; )
+            
+            return blocks;
+        } catch (IOException e) {
+            return new int[0];
+        } finally {
+            close(in);
+        } // end try in.readInt()
+    } // end load()
+    
+    
+    /**
+     * Closes a stream, ignoring any error.
+     * @param  stream  The stream to close; may be null.
+     * @pre    None.
+     * @post   stream is closed.
+     */
+    private static void close(java.io.Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) { }
+        } // end if (stream != null)
+    } // end close(java.io.Closeable)
+} // end class CacheManifest
@@ -0,0 +1,1879 @@
+/*
+ * @file    CacheSegment.java
+ * @brief   This class is one independently locked segment of a memory-
+ *           resident cache for blocks read from a hard disk. Each segment has
+ *           its own slots, hash index of block IDs and second-chance (clock)
+ *           hand, so threads working on blocks in different segments never
+ *           contend for the same monitor. Whenever a read or write is
+ *           requested, the segment is looked up through its hash index. If the
+ *           requested block is found, then the operation is performed in cache
+ *           only. If it is not found, then a free slot is sought to perform
+ *           the operation. If no free slots are available, then a slot is
+ *           selected to be freed by the replacement policy of the segment. A
+ *           dirty bit is maintained for each slot so that, if it is selected
+ *           for replacement, it may be written back to the hard disk if it has
+ *           been modified. The monitor of this segment is held only while slot
+ *           metadata change; disk reads and write-backs are performed on slots
+ *           marked busy, so hits on other blocks proceed during a miss and
+ *           concurrent misses on the same block wait for, and share, a single
+ *           disk read. The number of dirty slots and the time each slot became
+ *           dirty are tracked so that a background flusher can write blocks
+ *           back before they are chosen as victims. Blocks may also be read in
+ *           ahead of time; such blocks only take clean slots, and while more
+ *           than a quarter of the slots hold prefetched blocks that were never
+ *           used, the oldest of them are replaced before any other slot.
+ *           Block data are kept by a BlockStore, either on the heap or in
+ *           off-heap slabs, and addressed by slot. The state of each slot is
+ *           kept in int arrays and packed SlotBits indexed by slot, not in an
+ *           object per slot, so a victim search reads a few words per 64
+ *           slots rather than following a reference to each of them. A busy
+ *           slot belongs to the thread performing disk I/O on it; no other
+ *           thread may read, write or replace it until it is released, and
+ *           every change to the state of any slot is made with the monitor
+ *           held. A flushing slot is being written back from a copy of its
+ *           data; it may still be read and written, but not replaced. A slot
+ *           with pins may be read, but not written or replaced; a writable
+ *           pin holds the slot busy. Only the bytes in [validFrom, validTo) of
+ *           a resident slot hold block data; the rest are on disk only.
+ *           Optionally, misses are admitted through a frequency sketch: a
+ *           block read or written on a miss takes the victim's slot only if
+ *           it has been accessed more often of late than the victim's block;
+ *           otherwise the victim stays and the miss goes to the disk, so a
+ *           long scan of blocks used once cannot flush out the hot set.
+ *           Victims may also be sought clean-first: a first search within a
+ *           bounded window takes only clean slots, or dirty slots that have
+ *           been dirty for as many victim searches as a write-back is
+ *           weighted, so that a miss seldom has to write a block back before
+ *           its read.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.nio.ByteBuffer;
+
+
+class CacheSegment implements ReplacementPolicy.Slots {
+    public final static int   BATCH_DONE     = -2;  // served by beginBatch()
+    public final static int   BATCH_DEFERRED = -1;  // left to the caller
+    private int               nextVictim;   // index of next replacement victim
+    private SlotList          empty;        // empty, idle slots below limit
+    private int[]             frame;        // block held by each slot, or -1
+    private SlotBits          dirty;        // written in cache only
+    private SlotBits          busy;         // disk I/O in flight
+    private SlotBits          flushing;     // background write-back in flight
+    private SlotBits          modified;     // written to while flushing
+    private SlotBits          prefetched;   // read ahead, not used yet
+    private SlotBits          pinned;       // read-only views handed out
+    private int[]             pins;         // number of read-only views
+    private int[]             validFrom;    // first byte holding block data
+    private int[]             validTo;      // byte after the last valid one
+    private long[]            dirtySince;   // time, in ms, each became dirty
+    private BlockStore        store;        // data of each slot
+    private int               blockSize;    // bytes per hard disk block
+    private BlockIndex        index;        // block ID to slot
+    private ReplacementPolicy policy;       // chooses victims among slots
+    private volatile int      dirtyCount;   // slots holding unwritten data
+    private volatile int      slotCount;    // frame.length, for readers
+                                            //  without the monitor
+    private int               cleanHand;    // next slot for clean() to try
+    private SlotList          unused;       // prefetched, not yet used
+    private boolean           cleanOnly;    // victims must not be dirty
+    private CacheStats        stats;        // counters shared by the cache
+    private int               probes;       // slots examined for a victim
+    private int               limit;        // slots that may take new blocks
+    private FrequencySketch   sketch;       // admission filter, or null
+    private BlockIndex        bypassing;    // blocks turned away, in flight
+    private boolean           rejected;     // last miss was turned away
+    private int               cleanWindow;  // probes of a clean-first search;
+                                            //  0 for none
+    private int               dirtyWeight;  // sweeps of the slots a dirty
+                                            //  slot is passed over for
+    private boolean           cleanFirst;   // clean-first search under way
+    private int               searches;     // victim searches so far
+    private int[]             dirtyAt;      // searches when each slot became
+                                            //  dirty
+    private SlotList          recent;       // slots by last use, newest first
+    
+    
+    
+    
+    /**
+     * Initializes this CacheSegment to hold a given number of blocks.
+     * @param  blockSize  Block size, in bytes, used by hard disk to cache.
+     * @param  cacheBlocks  Number of blocks to store in this segment.
+     * @param  policyType  One of the policy constants of ReplacementPolicy;
+     *                      any other value selects CLOCK.
+     * @param  storageType  BlockStore.HEAP or SLAB; any other value selects
+     *                       HEAP.
+     * @param  admission  Whether misses must pass the admission filter to be
+     *                     cached.
+     * @param  stats  Counters to record the events of this segment in.
+     * @pre    blockSize > 0; cacheBlocks > 0; stats is not null.
+     * @post   An empty CacheSegment has been created to hold cacheBlocks of
+     *          data blocks from a hard disk.
+     */
+    public CacheSegment(int blockSize, int cacheBlocks, int policyType,
+                        int storageType, boolean admission,
+                        CacheStats stats) {
+        this.stats     = stats;
+        this.blockSize = blockSize;
+        probes         = 0;
+        limit          = cacheBlocks;
+        nextVictim     = 0;
+        empty          = new SlotList(cacheBlocks);
+        dirtyCount     = 0;
+        cleanHand      = 0;
+        unused         = new SlotList(cacheBlocks);
+        cleanOnly      = false;
+        frame          = new int[cacheBlocks];
+        slotCount      = cacheBlocks;
+        dirty          = new SlotBits(cacheBlocks);
+        busy           = new SlotBits(cacheBlocks);
+        flushing       = new SlotBits(cacheBlocks);
+        modified       = new SlotBits(cacheBlocks);
+        prefetched     = new SlotBits(cacheBlocks);
+        pinned         = new SlotBits(cacheBlocks);
+        pins           = new int[cacheBlocks];
+        validFrom      = new int[cacheBlocks];
+        validTo        = new int[cacheBlocks];
+        dirtySince     = new long[cacheBlocks];
+        index          = new BlockIndex(cacheBlocks);
+        sketch         = admission ? new FrequencySketch(cacheBlocks) : null;
+        bypassing      = new BlockIndex(1);
+        rejected       = false;
+        cleanWindow    = 0;
+        dirtyWeight    = 0;
+        cleanFirst     = false;
+        searches       = 0;
+        dirtyAt        = new int[cacheBlocks];
+        recent         = new SlotList(cacheBlocks);
+        java.util.Arrays.fill(frame, -1);
+        java.util.Arrays.fill(validTo, blockSize);
+        
+        for (int i = cacheBlocks - 1; i >= 0; --i) {
+            empty.push(i);  // slot 0 is the first to be filled
+        } // end for (; i >= 0; )
+        
+        switch (policyType) {
+            case ReplacementPolicy.ARC:
+                policy = new ArcPolicy(cacheBlocks);
+                break;
+            case ReplacementPolicy.TWO_Q:
+                policy = new TwoQueuePolicy(cacheBlocks);
+                break;
+            case ReplacementPolicy.LIRS:
+                policy = new LirsPolicy(cacheBlocks);
+                break;
+            default:
+                policy = new ClockPolicy(cacheBlocks);
+        } // end switch (policyType)
+        
+        if (storageType == BlockStore.SLAB) {
+            store = new SlabStore(blockSize, cacheBlocks);
+        } // end if (storageType == BlockStore.SLAB)
+        else {
+            store = new HeapStore(blockSize, cacheBlocks);
+        } // end else (storageType != BlockStore.SLAB)
+    } // end constructor
+    
+    
+    /**
+     * Reads a block of data from this segment. If the specified block is not
+     *  already in the cache, then an empty slot is sought in which to store
+     *  the data. If no empty slot is available, then a slot is selected for
+     *  replacement by the replacement policy. If the selected slot is dirty,
+     *  then its contents are written to disk before the new block is read
+     *  into it. The disk I/O is performed without holding the
+     *  monitor of this segment; the claimed slot is marked busy until it is
+     *  filled, so other threads asking for the same block wait for it rather
+     *  than reading it again. A block turned away by the admission filter is
+     *  read straight into buffer and not cached.
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @param  buffer  A data buffer to store the data of the located block.
+     * @pre    blockId references a data block on the hard disk; buffer is the
+     *          same size as a data block on the hard disk.
+     * @post   The resident cache and buffer[] contain the data of the block
+     *          referenced by blockId; any block that was replaced in the
+     *          resident cache has been written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean read(int blockId, byte buffer[]) {
+        return read(blockId, 0, blockSize, buffer);
+    } // end read(int, byte[])
+    
+    
+    /**
+     * Reads part of a block of data from this segment, as read(int, byte[])
+     *  does for a whole block. A block that was written partially while not
+     *  in the cache has only part of its slot valid; if the requested bytes
+     *  are not all within it, the rest of the block is first read from disk
+     *  and merged with the valid part. A block turned away by the admission
+     *  filter is read from disk and not cached.
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @param  offset  Position in the block of the first byte to read.
+     * @param  length  Number of bytes to read.
+     * @param  buffer  A data buffer to receive the bytes, from index 0.
+     * @pre    blockId references a data block on the hard disk; offset and
+     *          length lie within a block; buffer holds at least length bytes.
+     * @post   buffer[0 .. length) contains bytes offset .. offset + length of
+     *          the block referenced by blockId, which is resident unless it
+     *          was turned away; any block that was replaced in the resident
+     *          cache has been written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean read(int blockId, int offset, int length, byte buffer[]) {
+        int     slot;
+        boolean missed = false;  // whether the disk has been needed
+        
+        while (true) {
+            synchronized (this) {
+                if (!missed) {
+                    record(blockId);
+                } // end if (!missed)
+                
+                slot  = acquire(blockId, true);
+                
+                if (slot == -1 || busy.get(slot)) {
+                    stats.increment(CacheStats.READ_MISSES);
+                    break;      // block not in cache; claimed or turned away
+                } // end if (slot == -1 || busy.get(slot))
+                
+                if (offset >= validFrom[slot] &&
+                    offset + length <= validTo[slot]) {
+                    // block in cache, read it and be done
+                    if (!missed) {
+                        stats.increment(CacheStats.READ_HITS);
+                    } // end if (!missed)
+                    
+                    touch(slot);
+                    store.get(slot, offset, buffer, 0, length);
+                    return true;
+                } // end if (offset >= validFrom[slot] && ...)
+                
+                stats.increment(CacheStats.READ_MISSES);
+                missed     = true;
+                busy.set(slot);  // hold the slot while it is completed
+            } // end synchronized (this)
+            
+            if (!complete(slot)) {
+                return false;
+            } // end if (!complete(slot))
+        } // end while (true)
+        
+        if (slot == -1) {
+            return bypass(false, blockId, offset, length, buffer);
+        } // end if (slot == -1)
+        
+        return load(slot, blockId, offset, length, buffer);
+    } // end read(int, int, int, byte[])
+    
+    
+    /**
+     * Pins a block in this segment and returns a view of its cached data, so
+     *  the caller can use the data without copying them. A pinned slot is
+     *  never replaced. Any number of read-only pins may be held at once; a
+     *  writable pin is exclusive, i.e. the slot is held busy, as during disk
+     *  I/O, so no other thread reads, writes, pins or writes back the block
+     *  until it is unpinned. If the block is not in the cache, or only part
+     *  of it is valid, it is read in first, as by read(); the admission
+     *  filter never turns a block to be pinned away.
+     * @param  blockId  The location of the block on the hard disk to pin.
+     * @param  writable  true for an exclusive, writable view; false for a
+     *                    shared, read-only view.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   If a view was returned, blockId is resident and pinned; the
+     *          view must not be used after the matching call to unpin().
+     * @return A view of the whole block; null if it could not be read.
+     */
+    public ByteBuffer pin(int blockId, boolean writable) {
+        boolean missed = false;     // whether the disk has been needed
+        
+        while (true) {
+            int     slot;
+            boolean claimed;
+            
+            synchronized (this) {
+                if (!missed) {
+                    record(blockId);
+                } // end if (!missed)
+                
+                slot    = acquire(blockId, false);
+                claimed = busy.get(slot);
+                
+                while (!claimed && writable && pins[slot] > 0) {
+                    awaitChange();  // wait for read-only pins to go
+                    slot    = acquire(blockId, false);
+                    claimed = busy.get(slot);
+                } // end while (!claimed && writable && ...)
+                
+                if (!claimed) {
+                    if (whole(slot)) {
+                        if (!missed) {
+                            stats.increment(CacheStats.READ_HITS);
+                        } // end if (!missed)
+                        
+                        touch(slot);
+                        
+                        if (writable) {
+                            busy.set(slot);
+                            return store.view(slot);
+                        } // end if (writable)
+                        
+                        ++pins[slot];
+                        pinned.set(slot);
+                        return store.view(slot).asReadOnlyBuffer();
+                    } // end if (whole(slot))
+                    
+                    busy.set(slot);  // hold the slot while it is completed
+                } // end if (!claimed)
+                
+                stats.increment(CacheStats.READ_MISSES);
+                missed = true;
+            } // end synchronized (this)
+            
+            // read the block in, then pin it as a hit
+            if (claimed ? !load(slot, blockId, 0, 0, null)
+                        : !complete(slot)) {
+                return null;
+            } // end if (claimed ? ... : ...)
+        } // end while (true)
+    } // end pin(int, boolean)
+    
+    
+    /**
+     * Releases a pin taken by pin(). Releasing a writable pin marks the slot
+     *  dirty, since its data may have been changed through the view.
+     * @param  blockId  The location of the pinned block on the hard disk.
+     * @param  writable  Whether the pin being released is writable.
+     * @pre    The calling thread holds a pin of this kind on blockId.
+     * @post   The pin is released; the view must no longer be used.
+     * @return true if the pin was released; false, if blockId is not pinned
+     *          this way.
+     */
+    public synchronized boolean unpin(int blockId, boolean writable) {
+        int slot = index.get(blockId);
+        
+        if (slot == -1) {
+            return false;
+        } // end if (slot == -1)
+        
+        if (writable) {
+            if (!busy.get(slot) || frame[slot] != blockId) {
+                return false;
+            } // end if (!busy.get(slot) || frame[slot] != blockId)
+            
+            busy.clear(slot);
+            markDirty(slot);
+        } // end if (writable)
+        else {
+            if (pins[slot] == 0) {
+                return false;
+            } // end if (pins[slot] == 0)
+            
+            if (--pins[slot] == 0) {
+                pinned.clear(slot);
+            } // end if (--pins[slot] == 0)
+        } // end else (!writable)
+        
+        notifyAll();
+        return true;
+    } // end unpin(int, boolean)
+    
+    
+    /**
+     * Reads a block into a slot claimed for it, writing the old block of the
+     *  slot back first if it is dirty. The disk I/O is performed without
+     *  holding the monitor of this segment.
+     * @param  slot  A slot claimed by acquire() for blockId.
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @param  offset  Position in the block of the first byte to copy.
+     * @param  length  Number of bytes to copy.
+     * @param  buffer  A data buffer to receive a copy of the bytes; null for
+     *                  none.
+     * @pre    slot is busy and was claimed by the calling thread.
+     * @post   slot holds blockId and is released, or it has been restored or
+     *          released empty.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    private boolean load(int slot, int blockId, int offset, int length,
+                         byte buffer[]) {
+        boolean success = writeBack(slot);
+        
+        if (success) {
+            try {
+                store.read(slot, blockId);
+                
+                if (buffer != null) {
+                    store.get(slot, offset, buffer, 0, length);
+                } // end if (buffer != null)
+            } catch (Exception e) {
+                success = false;
+            } // end try store.read(slot, blockId)
+        } // end if (success)
+        
+        synchronized (this) {
+            if (!retire(slot, blockId, success)) {
+                return false;
+            } // end if (!retire(slot, blockId, success))
+            
+            if (success) {
+                fill(slot, blockId, false);
+            } // end if (success)
+            else {
+                discard(slot, blockId);
+            } // end else (!success)
+        } // end synchronized (this)
+        
+        return success;
+    } // end load(int, int, int, int, byte[])
+    
+    
+    /**
+     * Reads or writes a block straight from or to the disk, for a miss that
+     *  the admission filter turned away, without holding the monitor. A write
+     *  of part of the block reads the rest of it from disk first. Until this
+     *  method returns, acquire() keeps other threads from bringing the block
+     *  into this segment, so the disk copy cannot be overtaken by a stale one.
+     * @param  isWrite  true to write the bytes; false to read them.
+     * @param  blockId  The location of the block on the hard disk.
+     * @param  offset  Position in the block of the first byte.
+     * @param  length  Number of bytes.
+     * @param  buffer  The bytes to write, or a buffer to receive those read,
+     *                  from index 0.
+     * @pre    blockId was turned away by acquire() for the calling thread.
+     * @post   The bytes have been transferred, unless false is returned;
+     *          blockId no longer bypasses this segment.
+     * @return true if the disk I/O succeeded; false, otherwise.
+     */
+    private boolean bypass(boolean isWrite, int blockId, int offset,
+                           int length, byte buffer[]) {
+        byte[]  data    = new byte[blockSize];
+        boolean success = true;
+        
+        try {
+            if (isWrite) {
+                System.arraycopy(buffer, 0, data, offset, length);
+                success = (offset == 0 && length == blockSize) ||
+                          merge(blockId, data, offset, offset + length);
+                
+                if (success) {
+                    SysLib.rawwrite(blockId, data);
+                } // end if (success)
+            } // end if (isWrite)
+            else {
+                SysLib.rawread(blockId, data);
+                System.arraycopy(data, offset, buffer, 0, length);
+            } // end else (!isWrite)
+        } catch (Exception e) {
+            success = false;
+        } // end try (isWrite ? ... : ...)
+        
+        synchronized (this) {
+            bypassing.remove(blockId);
+            notifyAll();
+        } // end synchronized (this)
+        
+        return success;
+    } // end bypass(boolean, int, int, int, byte[])
+    
+    
+    /**
+     * Writes a block of data to this segment. If the specified block is not
+     *  already in the cache, then an empty slot is sought in which to write
+     *  the data. If no empty slot is available, then a slot is selected for
+     *  replacement by the replacement policy. If the selected slot is dirty,
+     *  then its contents are written to disk, without holding the monitor of
+     *  this segment, before the new block is written into it. A block turned
+     *  away by the admission filter is written straight to disk.
+     * @param  blockId  The location of the block on the hard disk to write.
+     * @param  buffer  A buffer containing data to be written to the specified
+     *                  block.
+     * @pre    blockId references a data block on the hard disk; buffer is the
+     *          same size as a data block on the hard disk.
+     * @post   The resident cache contains the data from the provided buffer;
+     *          any block that was replaced in the resident cache has been
+     *          written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean write(int blockId, byte buffer[]) {
+        return write(blockId, 0, blockSize, buffer);
+    } // end write(int, byte[])
+    
+    
+    /**
+     * Writes part of a block of data to this segment, as write(int, byte[])
+     *  does for a whole block. If the block is not in the cache, no disk read
+     *  is needed: only the written bytes of its slot are marked valid, and
+     *  the rest of the block is read from disk only when it is needed. If the
+     *  block is in the cache but the written bytes neither overlap nor adjoin
+     *  its valid part, the rest of the block is read in first, so that the
+     *  valid part of a slot is always a single range. A block turned away by
+     *  the admission filter is written through to disk, merged with the rest
+     *  of the block on disk, and not cached.
+     * @param  blockId  The location of the block on the hard disk to write.
+     * @param  offset  Position in the block of the first byte to write.
+     * @param  length  Number of bytes to write.
+     * @param  buffer  A buffer containing the bytes to write, from index 0.
+     * @pre    blockId references a data block on the hard disk; offset and
+     *          length lie within a block; buffer holds at least length bytes.
+     * @post   The resident cache contains the bytes from the provided buffer
+     *          at offset in the block; any block that was replaced in the
+     *          resident cache has been written back to the hard disk.
+     * @return true if all operations completed successfully; false, otherwise.
+     */
+    public boolean write(int blockId, int offset, int length, byte buffer[]) {
+        int     slot;
+        boolean success;
+        boolean missed = false;  // whether the disk has been needed
+        
+        while (true) {
+            synchronized (this) {
+                if (!missed) {
+                    record(blockId);
+                } // end if (!missed)
+                
+                slot  = acquire(blockId, true);
+                
+                while (slot != -1 && !busy.get(slot) && pins[slot] > 0) {
+                    awaitChange();  // readers hold views of the block
+                    slot  = acquire(blockId, true);
+                } // end while (slot != -1 && ...)
+                
+                if (slot == -1) {
+                    stats.increment(CacheStats.WRITE_MISSES);
+                    break;      // block turned away, written past the cache
+                } // end if (slot == -1)
+                
+                if (busy.get(slot)) {
+                    stats.increment(CacheStats.WRITE_MISSES);
+                    
+                    if (dirty.get(slot)) {
+                        break;  // claimed slot must be written back first
+                    } // end if (dirty.get(slot))
+                    
+                    // clean slot claimed, no disk I/O needed
+                    try {
+                        store.put(slot, offset, buffer, 0, length);
+                    } catch (Exception e) {
+                        discard(slot, blockId);
+                        return false;
+                    } // end try store.put(slot, offset, buffer, 0, length)
+                    
+                    fill(slot, blockId, true);
+                    validFrom[slot] = offset;
+                    validTo[slot]   = offset + length;
+                    return true;
+                } // end if (busy.get(slot))
+                
+                if (offset <= validTo[slot] &&
+                    offset + length >= validFrom[slot]) {
+                    // block in cache, and the valid part stays one range
+                    if (!missed) {
+                        stats.increment(CacheStats.WRITE_HITS);
+                    } // end if (!missed)
+                    
+                    store.put(slot, offset, buffer, 0, length);
+                    touch(slot);
+                    markDirty(slot);
+                    validFrom[slot] = Math.min(validFrom[slot], offset);
+                    validTo[slot]   = Math.max(validTo[slot],
+                                               offset + length);
+                    return true;
+                } // end if (offset <= validTo[slot] && ...)
+                
+                stats.increment(CacheStats.WRITE_MISSES);
+                missed     = true;
+                busy.set(slot);  // hold the slot while it is completed
+            } // end synchronized (this)
+            
+            if (!complete(slot)) {
+                return false;
+            } // end if (!complete(slot))
+        } // end while (true)
+        
+        if (slot == -1) {
+            return bypass(true, blockId, offset, length, buffer);
+        } // end if (slot == -1)
+        
+        // block not in cache, and the claimed slot must be written back
+        success = writeBack(slot);
+        
+        if (success) {
+            try {
+                store.put(slot, offset, buffer, 0, length);
+            } catch (Exception e) {
+                success = false;
+            } // end try store.put(slot, offset, buffer, 0, length)
+        } // end if (success)
+        
+        synchronized (this) {
+            if (!retire(slot, blockId, success)) {
+                return false;
+            } // end if (!retire(slot, blockId, success))
+            
+            fill(slot, blockId, true);
+            validFrom[slot] = offset;
+            validTo[slot]   = offset + length;
+        } // end synchronized (this)
+        
+        return true;
+    } // end write(int, int, int, byte[])
+    
+    
+    /**
+     * Makes all of a partially valid slot valid by reading its block from
+     *  disk and keeping the valid part, without holding the monitor.
+     * @param  slot  A resident slot marked busy by the calling thread.
+     * @pre    slot is busy and was marked so by the calling thread.
+     * @post   slot is released; if the read succeeded, all of it is valid.
+     * @return true if the block was read; false, otherwise.
+     */
+    private boolean complete(int slot) {
+        boolean success = merge(slot);
+        
+        synchronized (this) {
+            if (success) {
+                validFrom[slot] = 0;
+                validTo[slot]   = blockSize;
+            } // end if (success)
+            
+            busy.clear(slot);
+            notifyAll();
+        } // end synchronized (this)
+        
+        return success;
+    } // end complete(int)
+    
+    
+    /**
+     * Fills the invalid part of a slot from disk, leaving its valid range
+     *  as it is for the caller to widen.
+     * @param  slot  A resident slot.
+     * @pre    slot is busy and belongs to the calling thread.
+     * @post   If the read succeeded, all of the data of slot are valid.
+     * @return true if the block was read; false, otherwise.
+     */
+    private boolean merge(int slot) {
+        byte[] data = new byte[blockSize];
+        
+        store.get(slot, validFrom[slot], data, validFrom[slot],
+                  validTo[slot] - validFrom[slot]);
+        
+        if (!merge(frame[slot], data, validFrom[slot], validTo[slot])) {
+            return false;
+        } // end if (!merge(...))
+        
+        store.put(slot, 0, data, 0, blockSize);
+        return true;
+    } // end merge(int)
+    
+    
+    /**
+     * Fills the invalid part of a block buffer from disk.
+     * @param  blockId  The location of the block on the hard disk.
+     * @param  data  Buffer holding valid data in [validFrom, validTo).
+     * @param  validFrom  First valid byte of data.
+     * @param  validTo  Byte after the last valid byte of data.
+     * @pre    data is not in use by any other thread.
+     * @post   If the read succeeded, data outside [validFrom, validTo) holds
+     *          the bytes on disk.
+     * @return true if the block was read; false, otherwise.
+     */
+    private static boolean merge(int blockId, byte data[], int validFrom,
+                                 int validTo) {
+        byte[] disk = new byte[data.length];
+        
+        try {
+            SysLib.rawread(blockId, disk);
+        } catch (Exception e) {
+            return false;
+        } // end try SysLib.rawread(blockId, disk)
+        
+        System.arraycopy(disk, 0, data, 0, validFrom);
+        System.arraycopy(disk, validTo, data, validTo, data.length - validTo);
+        return true;
+    } // end merge(int, byte[], int, int)
+    
+    
+    /**
+     * Checks whether all of a slot is valid.
+     * @param  slot  A resident slot.
+     * @pre    The calling thread holds the monitor or owns slot.
+     * @post   This CacheSegment is unchanged.
+     * @return true if every byte of slot is valid; false, otherwise.
+     */
+    private boolean whole(int slot) {
+        return validFrom[slot] == 0 && validTo[slot] == blockSize;
+    } // end whole(int)
+    
+    
+    /**
+     * Drops every resident block of this segment. Slots that are busy or
+     *  pinned, or that were modified since the last write-back, are left
+     *  alone so that no data are lost.
+     * @pre    The dirty slots have just been written back.
+     * @post   Every clean, idle slot is empty and forgotten by the policy.
+     */
+    public synchronized void invalidate() {
+        int count = frame.length;
+        
+        for (int i = 0; i < count; ++i) {
+            if (!busy.get(i) && !dirty.get(i) && pins[i] == 0 &&
+                frame[i] != -1) {
+                index.remove(frame[i]);
+                policy.remove(i);
+                frame[i] = -1;
+                prefetched.clear(i);
+                unused.remove(i);
+                recent.remove(i);
+                release(i);
+            } // end if (!busy.get(i) && ...)
+        } // end for(; i < count; )
+    } // end invalidate()
+    
+    
+    /**
+     * Starts writing back every dirty slot of this segment, for sync() and
+     *  flush() of the Cache. Write-backs already in flight are waited for;
+     *  the dirty slots are then marked busy, so that the caller can write
+     *  them, in any order, without holding the monitor.
+     * @pre    None.
+     * @post   Every dirty slot is busy and belongs to the calling thread,
+     *          which must pass each one to endWriteBack().
+     * @return The indices of the slots marked busy.
+     */
+    public synchronized int[] beginWriteBack() {
+        int   count  = frame.length;
+        int   marked = 0;
+        int[] slots;
+        
+        while (writeBackPending()) {
+            awaitChange();
+        } // end while (writeBackPending())
+        
+        slots = new int[dirtyCount];
+        
+        for (int i = 0; i < count; ++i) {
+            if (dirty.get(i)) {
+                busy.set(i);
+                slots[marked++]   = i;
+            } // end if (dirty.get(i))
+        } // end for(; i < count; )
+        
+        return slots;
+    } // end beginWriteBack()
+    
+    
+    /**
+     * Reports the block held by a slot. For a slot marked busy by
+     *  beginWriteBack(), the value is stable until endWriteBack().
+     * @param  slot  Index of a slot of this segment.
+     * @pre    None.
+     * @post   This CacheSegment is unchanged.
+     * @return The block ID held by slot; -1 if it is empty.
+     */
+    public int frameOf(int slot) {
+        return frame[slot];
+    } // end frameOf(int)
+    
+    
+    /**
+     * Writes one slot marked by beginWriteBack() to disk, without holding
+     *  the monitor. Also writes back the old block of a dirty victim claimed
+     *  by beginBatch(). A partially valid slot is completed from disk first.
+     * @param  slot  A slot returned by beginWriteBack(), or claimed by
+     *                beginBatch() with its old block still mapped.
+     * @pre    slot is busy and belongs to the calling thread.
+     * @post   The data of slot have been written to its block.
+     * @return true if the write succeeded; false, otherwise.
+     */
+    public boolean writeBackSlot(int slot) {
+        if (!whole(slot)) {
+            if (!merge(slot)) {
+                return false;
+            } // end if (!merge(slot))
+            
+            synchronized (this) {
+                validFrom[slot] = 0;
+                validTo[slot]   = blockSize;
+            } // end synchronized (this)
+        } // end if (!whole(slot))
+        
+        try {
+            store.write(slot, frame[slot]);
+        } catch (Exception e) {
+            return false;
+        } // end try store.write(slot, frame[slot])
+        
+        return true;
+    } // end writeBackSlot(int)
+    
+    
+    /**
+     * Releases a slot marked by beginWriteBack().
+     * @param  slot  A slot returned by beginWriteBack().
+     * @param  written  Whether writeBackSlot() succeeded for slot.
+     * @pre    slot is busy and belongs to the calling thread.
+     * @post   slot is no longer busy; it is clean if it was written.
+     */
+    public synchronized void endWriteBack(int slot, boolean written) {
+        busy.clear(slot);
+        
+        if (written) {
+            dirty.clear(slot);
+            --dirtyCount;
+        } // end if (written)
+        
+        notifyAll();
+    } // end endWriteBack(int, boolean)
+    
+    
+    /**
+     * Starts the part of a vectored read or write that falls in this segment,
+     *  in a single acquisition of its monitor. Hits are served at once. For a
+     *  write, a miss whose victim is clean is also served at once, since no
+     *  disk I/O is needed. Any other miss has a slot claimed for it, which is
+     *  finished by endBatch() after the caller has performed the disk I/O. A
+     *  block that is in flight, or appears in the vector more than once, is
+     *  deferred rather than waited for, so that two batches never wait on
+     *  each other's claims; so is a write to a block with read-only pins,
+     *  and a read of a block only partially valid. A miss turned away by the
+     *  admission filter is deferred too, and so is every later position of
+     *  the same block, so that the positions of a block are still performed
+     *  in vector order.
+     * @param  isWrite  true for a write; false for a read.
+     * @param  blockIds  Block IDs of the whole vector.
+     * @param  items  Positions in the vector whose blocks hash to this
+     *                 segment.
+     * @param  count  Number of positions in items.
+     * @param  buffer  Contiguous user buffer; the block at position i of the
+     *                  vector occupies the block-sized range at i times the
+     *                  block size.
+     * @param  slots  Receives, for each position in items, the slot claimed
+     *                 for it, BATCH_DONE if it was served, or BATCH_DEFERRED.
+     * @pre    buffer holds a block for every position of the vector.
+     * @post   Served blocks have been copied; claimed slots are busy and
+     *          belong to the calling thread.
+     */
+    public synchronized void beginBatch(boolean isWrite, int blockIds[],
+                                        int items[], int count,
+                                        byte buffer[], int slots[]) {
+        boolean turnedAway = false;     // whether a miss has been deferred
+        
+        for (int i = 0; i < count; ++i) {
+            int blockId = blockIds[items[i]];
+            int offset  = items[i] * blockSize;
+            int slot    = index.get(blockId);
+            
+            slots[i] = BATCH_DEFERRED;
+            
+            if (slot != -1) {
+                if (!busy.get(slot) &&
+                    (isWrite ? pins[slot] == 0
+                             : whole(slot))) {
+                    // block in cache, served in place
+                    if (isWrite) {
+                        store.put(slot, 0, buffer, offset, blockSize);
+                        markDirty(slot);
+                        validFrom[slot] = 0;
+                        validTo[slot]   = blockSize;
+                    } // end if (isWrite)
+                    else {
+                        store.get(slot, 0, buffer, offset, blockSize);
+                    } // end else (!isWrite)
+                    
+                    touch(slot);
+                    record(blockId);
+                    stats.increment(isWrite ? CacheStats.WRITE_HITS
+                                            : CacheStats.READ_HITS);
+                    slots[i] = BATCH_DONE;
+                } // end if (!busy.get(slot) && ...)
+                
+                continue;
+            } // end if (slot != -1)
+            
+            if (bypassing.get(blockId) != -1 ||
+                (turnedAway && deferred(blockIds, items, slots, i))) {
+                continue;   // in flight, or an earlier position deferred
+            } // end if (bypassing.get(blockId) != -1 || ...)
+            
+            if (!setNextVictim(blockId, true)) {
+                turnedAway |= rejected;
+                continue;   // every slot busy, or turned away
+            } // end if (!setNextVictim(blockId, true))
+            
+            slot = nextVictim;
+            claim(slot, blockId);
+            record(blockId);
+            stats.increment(isWrite ? CacheStats.WRITE_MISSES
+                                    : CacheStats.READ_MISSES);
+            
+            if (isWrite && !dirty.get(slot)) {
+                // clean slot claimed, no disk I/O needed
+                store.put(slot, 0, buffer, offset, blockSize);
+                fill(slot, blockId, true);
+                slots[i] = BATCH_DONE;
+            } // end if (isWrite && !dirty.get(slot))
+            else {
+                slots[i] = slot;
+            } // end else (disk I/O needed)
+        } // end for (; i < count; )
+    } // end beginBatch(boolean, int[], int[], int, byte[], int[])
+    
+    
+    /**
+     * Checks whether an earlier position of a batch, holding the same block
+     *  as a given one, has been deferred.
+     * @param  blockIds  Block IDs of the whole vector.
+     * @param  items  Positions in the vector handled by this segment.
+     * @param  slots  Outcomes of the positions in items before i.
+     * @param  i  Index in items of the position to check.
+     * @pre    slots has been filled in for items[0 .. i).
+     * @post   None.
+     * @return true if a position before i holds the same block and was
+     *          deferred; false, otherwise.
+     */
+    private static boolean deferred(int blockIds[], int items[], int slots[],
+                                    int i) {
+        for (int j = 0; j < i; ++j) {
+            if (slots[j] == BATCH_DEFERRED &&
+                blockIds[items[j]] == blockIds[items[i]]) {
+                return true;
+            } // end if (slots[j] == BATCH_DEFERRED && ...)
+        } // end for (; j < i; )
+        
+        return false;
+    } // end deferred(int[], int[], int[], int)
+    
+    
+    /**
+     * Reads a block into a slot claimed by beginBatch(), without holding the
+     *  monitor.
+     * @param  slot  A slot claimed by beginBatch() whose old block, if any,
+     *                has been written back.
+     * @param  blockId  The block the slot was claimed for.
+     * @pre    slot is busy and belongs to the calling thread.
+     * @post   The data of blockId are in slot.
+     * @return true if the read succeeded; false, otherwise.
+     */
+    public boolean readSlot(int slot, int blockId) {
+        try {
+            store.read(slot, blockId);
+        } catch (Exception e) {
+            return false;
+        } // end try store.read(slot, blockId)
+        
+        return true;
+    } // end readSlot(int, int)
+    
+    
+    /**
+     * Finishes the slots claimed by beginBatch(), in a single acquisition of
+     *  the monitor. A slot whose old block could not be written back is
+     *  restored; a slot that could not be read is released empty; any other
+     *  slot is filled and its data copied to or from the user buffer.
+     * @param  isWrite  As passed to beginBatch().
+     * @param  blockIds  As passed to beginBatch().
+     * @param  items  As passed to beginBatch().
+     * @param  count  As passed to beginBatch().
+     * @param  buffer  As passed to beginBatch().
+     * @param  slots  As filled in by beginBatch().
+     * @param  written  Whether the old block of the slot claimed for each
+     *                   position of the vector was written back, or needed
+     *                   no write-back.
+     * @param  read  Whether the block at each position of the vector was
+     *                read into its slot; ignored for a write.
+     * @pre    The disk I/O of every claimed slot has been performed.
+     * @post   No slot claimed by beginBatch() is busy.
+     * @return true if every claimed slot was finished successfully; false,
+     *          otherwise.
+     */
+    public synchronized boolean endBatch(boolean isWrite, int blockIds[],
+                                         int items[], int count,
+                                         byte buffer[], int slots[],
+                                         boolean written[], boolean read[]) {
+        boolean success = true;
+        
+        for (int i = 0; i < count; ++i) {
+            int item = items[i];
+            int slot = slots[i];
+            
+            if (slot < 0) {
+                continue;
+            } // end if (slot < 0)
+            
+            if (!retire(slot, blockIds[item], written[item])) {
+                success = false;
+            } // end if (!retire(slot, blockIds[item], written[item]))
+            else if (isWrite) {
+                store.put(slot, 0, buffer, item * blockSize, blockSize);
+                fill(slot, blockIds[item], true);
+            } // end else if (isWrite)
+            else if (read[item]) {
+                store.get(slot, 0, buffer, item * blockSize, blockSize);
+                fill(slot, blockIds[item], false);
+            } // end else if (read[item])
+            else {
+                discard(slot, blockIds[item]);
+                success = false;
+            } // end else (!read[item])
+        } // end for (; i < count; )
+        
+        return success;
+    } // end endBatch(boolean, int[], int[], int, byte[], int[], ...)
+    
+    
+    /**
+     * Writes dirty slots back to disk in the background. Every slot that has
+     *  been dirty for at least maxAge milliseconds is written; in addition, if
+     *  more than highPercent of the slots are dirty, further slots are written
+     *  until no more than lowPercent are. Each slot is copied under the
+     *  monitor and written from the copy without it, so the slot can still be
+     *  read and written meanwhile; if it is written to before the copy reaches
+     *  the disk, it stays dirty.
+     * @param  highPercent  Dirty percentage above which slots are written
+     *                       regardless of age.
+     * @param  lowPercent  Dirty percentage to write down to once highPercent
+     *                      has been exceeded.
+     * @param  maxAge  Age, in milliseconds, after which a dirty slot is
+     *                  always written.
+     * @pre    0 <= lowPercent <= highPercent <= 100.
+     * @post   Aged dirty slots and enough others to reach lowPercent have
+     *          been written back, except for slots busy at the time.
+     * @return The number of slots written back.
+     */
+    public int clean(int highPercent, int lowPercent, long maxAge) {
+        int    count;
+        int    cleaned     = 0; // slots written back and now clean
+        int    excess      = 0; // young slots to write to reach lowPercent
+        int    chosenCount = 0; // slots selected for write-back
+        int[]  chosen;          // indices of the selected slots
+        long   cutoff      = System.currentTimeMillis() - maxAge;
+        byte[] copy;            // snapshot of the slot being written
+        
+        synchronized (this) {
+            count = frame.length;
+            
+            if (dirtyCount * 100 > highPercent * count) {
+                excess = dirtyCount - lowPercent * count / 100;
+            } // end if (dirtyCount * 100 > highPercent * count)
+            
+            chosen = new int[dirtyCount];
+            
+            // aged slots always; others round-robin while excess remains
+            for (int i = 0; i < count && chosenCount < chosen.length; ++i) {
+                int slot = (cleanHand + i) % count;
+                
+                if (dirty.get(slot) && evictable(slot) &&
+                    (dirtySince[slot] <= cutoff || excess > 0)) {
+                    chosen[chosenCount++] = slot;
+                    
+                    if (dirtySince[slot] > cutoff) {
+                        --excess;
+                        cleanHand = (slot + 1) % count;
+                    } // end if (dirtySince[slot] > cutoff)
+                } // end if (dirty.get(slot) && ...)
+            } // end for (; i < count && ...; )
+            
+            copy = new byte[blockSize];
+        } // end synchronized (this)
+        
+        for (int i = 0; i < chosenCount; ++i) {
+            int     slot    = chosen[i];
+            boolean written = false;
+            int     block;      // block, and valid range, being written
+            int     from;
+            int     to;
+            
+            synchronized (this) {
+                if (slot >= frame.length || !dirty.get(slot) ||
+                    !evictable(slot)) {
+                    continue;   // written back, claimed or removed since
+                } // end if (slot >= frame.length || ...)
+                
+                store.get(slot, 0, copy, 0, blockSize);
+                block = frame[slot];
+                from  = validFrom[slot];
+                to    = validTo[slot];
+                flushing.set(slot);
+                modified.clear(slot);
+            } // end synchronized (this)
+            
+            try {
+                if (from == 0 && to == copy.length ||
+                    merge(block, copy, from, to)) {
+                    SysLib.rawwrite(block, copy);
+                    written = true;
+                } // end if (from == 0 && ... || merge(...))
+            } catch (Exception e) { }
+            
+            synchronized (this) {
+                flushing.clear(slot);
+                
+                if (written && !modified.get(slot)) {
+                    dirty.clear(slot);
+                    --dirtyCount;
+                    ++cleaned;
+                } // end if (written && !modified.get(slot))
+                
+                notifyAll();
+            } // end synchronized (this)
+        } // end for (; i < chosenCount; )
+        
+        return cleaned;
+    } // end clean(int, int, long)
+    
+    
+    /**
+     * Reads a block into this segment ahead of time. Only an empty slot, a
+     *  clean slot or an unused prefetched slot is taken, so no write-back is
+     *  ever needed; if the block is already resident or in flight, nothing
+     *  is done. The slot is marked prefetched, so that it is replaced first
+     *  if the block is never used. The disk read is performed without holding
+     *  the monitor of this segment.
+     * @param  blockId  The location of the block on the hard disk to read.
+     * @pre    blockId references a data block on the hard disk.
+     * @post   blockId is resident, or this segment is unchanged.
+     * @return true if the block was read into this segment; false, otherwise.
+     */
+    public boolean prefetch(int blockId) {
+        int     slot;
+        boolean success;
+        
+        synchronized (this) {
+            if (index.get(blockId) != -1 || bypassing.get(blockId) != -1) {
+                return false;
+            } // end if (index.get(blockId) != -1 || ...)
+            
+            cleanOnly = true;
+            success   = setNextVictim(blockId, false);
+            cleanOnly = false;
+            
+            if (!success) {
+                return false;
+            } // end if (!success)
+            
+            slot = nextVictim;
+            claim(slot, blockId);
+        } // end synchronized (this)
+        
+        try {
+            store.read(slot, blockId);
+        } catch (Exception e) {
+            success = false;
+        } // end try store.read(slot, blockId)
+        
+        synchronized (this) {
+            if (success) {
+                fill(slot, blockId, false);
+                prefetched.set(slot);
+                unused.push(slot);
+                stats.increment(CacheStats.PREFETCHES);
+            } // end if (success)
+            else {
+                discard(slot, blockId);
+            } // end else (!success)
+        } // end synchronized (this)
+        
+        return success;
+    } // end prefetch(int)
+    
+    
+    /**
+     * Changes the number of slots of this segment while it is in use.
+     *  Growing adds empty slots at the end. Shrinking removes the slots at
+     *  the end: they stop taking new blocks at once, each is dropped as soon
+     *  as it is idle, after writing it back if it is dirty, and the arrays
+     *  are cut once all of them are empty. Hits on those slots are served
+     *  until they are dropped. Slots that remain keep their blocks and their
+     *  replacement state.
+     * @param  slots  New number of slots.
+     * @pre    slots > 0; no other resize of this segment is in progress.
+     * @post   This segment has slots slots, unless a write-back failed, in
+     *          which case its size is unchanged.
+     * @return true if the segment was resized; false, otherwise.
+     */
+    public boolean resize(int slots) {
+        int count;
+        
+        synchronized (this) {
+            count = frame.length;
+            
+            if (slots >= count) {
+                resizeTables(slots);
+                limit = slots;
+                
+                for (int i = slots - 1; i >= count; --i) {
+                    empty.push(i);
+                } // end for (; i >= count; )
+                
+                return true;
+            } // end if (slots >= count)
+            
+            limit = slots;      // no new block enters the slots to remove
+            
+            for (int i = slots; i < count; ++i) {
+                empty.remove(i);
+            } // end for (; i < count; )
+        } // end synchronized (this)
+        
+        for (int i = slots; i < count; ) {
+            boolean written;
+            
+            synchronized (this) {
+                if (busy.get(i) || flushing.get(i) || pins[i] > 0) {
+                    awaitChange();
+                    continue;
+                } // end if (busy.get(i) || flushing.get(i) || ...)
+                
+                if (!dirty.get(i)) {
+                    drop(i++);
+                    continue;
+                } // end if (!dirty.get(i))
+                
+                busy.set(i);  // write back before dropping
+            } // end synchronized (this)
+            
+            written = writeBackSlot(i);
+            endWriteBack(i, written);
+            
+            if (!written) {
+                synchronized (this) {
+                    limit = count;
+                    
+                    for (int j = slots; j < count; ++j) {
+                        if (frame[j] == -1 && !busy.get(j)) {
+                            release(j);     // dropped already
+                        } // end if (frame[j] == -1 && !busy.get(j))
+                    } // end for (; j < count; )
+                } // end synchronized (this)
+                
+                return false;
+            } // end if (!written)
+            
+            stats.increment(CacheStats.DIRTY_EVICTIONS);
+        } // end for (; i < count; )
+        
+        synchronized (this) {
+            resizeTables(slots);
+            cleanHand = cleanHand % slots;
+        } // end synchronized (this)
+        
+        return true;
+    } // end resize(int)
+    
+    
+    /**
+     * Changes the length of every per-slot table of this segment, and of its
+     *  policy and store.
+     * @param  slots  New number of slots.
+     * @pre    The calling thread holds the monitor; no slot numbered slots or
+     *          above is in use.
+     * @post   Remaining slots keep their state; new slots are empty.
+     */
+    private void resizeTables(int slots) {
+        int count = frame.length;
+        
+        frame      = java.util.Arrays.copyOf(frame, slots);
+        slotCount  = slots;
+        pins       = java.util.Arrays.copyOf(pins, slots);
+        validFrom  = java.util.Arrays.copyOf(validFrom, slots);
+        validTo    = java.util.Arrays.copyOf(validTo, slots);
+        dirtySince = java.util.Arrays.copyOf(dirtySince, slots);
+        dirtyAt    = java.util.Arrays.copyOf(dirtyAt, slots);
+        dirty.resize(slots);
+        busy.resize(slots);
+        flushing.resize(slots);
+        modified.resize(slots);
+        prefetched.resize(slots);
+        pinned.resize(slots);
+        
+        for (int i = count; i < slots; ++i) {
+            frame[i]   = -1;
+            validTo[i] = blockSize;
+        } // end for (; i < slots; )
+        
+        policy.resize(slots);
+        unused.resize(slots);
+        empty.resize(slots);
+        recent.resize(slots);
+        store.resize(slots);
+        
+        if (sketch != null) {
+            sketch.resize(slots);
+        } // end if (sketch != null)
+    } // end resizeTables(int)
+    
+    
+    /**
+     * Reports the number of slots in this segment.
+     * @pre    None.
+     * @post   This CacheSegment is unchanged.
+     * @return The number of blocks this segment can hold.
+     */
+    public synchronized int capacity() {
+        return frame.length;
+    } // end capacity()
+    
+    
+    /**
+     * Lists the blocks resident in this segment, most recently used first.
+     *  Busy slots, and prefetched blocks that were never used, are left out,
+     *  as they are not part of the working set.
+     * @pre    None.
+     * @post   This CacheSegment is unchanged.
+     * @return The IDs of the resident blocks, in order of last use.
+     */
+    public synchronized int[] hotBlocks() {
+        int[] blocks = new int[recent.size()];
+        int   count  = 0;
+        
+        for (int slot = recent.newest(); slot != -1;
+             slot = recent.older(slot)) {
+            if (frame[slot] != -1 && !busy.get(slot) &&
+                !prefetched.get(slot)) {
+                blocks[count++] = frame[slot];
+            } // end if (frame[slot] != -1 && ...)
+        } // end for (; slot != -1; )
+        
+        return java.util.Arrays.copyOf(blocks, count);
+    } // end hotBlocks()
+    
+    
+    /**
+     * Reports the percentage of slots in this segment that are dirty. The
+     *  monitor is not taken, so the cache may ask after every write without
+     *  contending with the segment; the value is only a hint, as the count
+     *  and the number of slots are read apart.
+     * @pre    None.
+     * @post   This CacheSegment is unchanged.
+     * @return The percentage, from 0 to 100, of slots holding unwritten data.
+     */
+    public int dirtyPercent() {
+        return dirtyCount * 100 / slotCount;
+    } // end dirtyPercent()
+    
+    
+    /**
+     * Turns clean-first victim selection on or off. A miss then first looks
+     *  for a victim that needs no write-back, examining no more than window
+     *  probes, as counted in CacheStats.VICTIM_PROBES. A write-back is
+     *  weighted as dirtyWeight sweeps of the slots: a dirty slot is passed
+     *  over until there have been that many victim searches per slot since
+     *  it became dirty, and is then taken like a clean one.
+     * @param  window  Largest number of probes of a clean-first search; 0
+     *                  turns clean-first selection off.
+     * @param  dirtyWeight  Sweeps of the slots, in victim searches per slot,
+     *                       for which a dirty slot is passed over.
+     * @pre    window >= 0; dirtyWeight >= 0.
+     * @post   Later victim searches use the new settings.
+     */
+    public synchronized void setCleanFirst(int window, int dirtyWeight) {
+        cleanWindow      = window;
+        this.dirtyWeight = dirtyWeight;
+    } // end setCleanFirst(int, int)
+    
+    
+    /**
+     * Finds a block in the cache or claims a slot for it. Busy slots are
+     *  waited for, so a block that another thread is loading is returned only
+     *  once that thread has filled it, and so is a block that another thread
+     *  is reading or writing past the cache. Must be called with the monitor
+     *  held.
+     * @param  blockId  The location of the block on the hard disk.
+     * @param  filtered  Whether the admission filter, if any, may turn the
+     *                    block away rather than replace a victim.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   If the block is resident, its slot is unchanged; if it was
+     *          turned away, it is recorded as bypassing this segment, and the
+     *          calling thread must pass it to bypass(); otherwise, a slot has
+     *          been marked busy for the calling thread and blockId is mapped
+     *          to it. If the slot is still dirty, its old block remains
+     *          mapped until it has been written back; if it is clean, its old
+     *          block has been removed from the index.
+     * @return The slot holding blockId, which is not busy; the slot claimed
+     *          for blockId, which is busy; or -1 if blockId was turned away.
+     */
+    private int acquire(int blockId, boolean filtered) {
+        while (true) {
+            int slot = index.get(blockId);
+            
+            if (slot == -1 && bypassing.get(blockId) == -1) {
+                if (setNextVictim(blockId, filtered)) {
+                    claim(nextVictim, blockId);
+                    return nextVictim;
+                } // end if (setNextVictim(blockId, filtered))
+                
+                if (rejected) {
+                    bypassing.put(blockId, 0);
+                    return -1;
+                } // end if (rejected)
+            } // end if (slot == -1 && bypassing.get(blockId) == -1)
+            else if (slot != -1 && !busy.get(slot)) {
+                return slot;
+            } // end else if (slot != -1 && !busy.get(slot))
+            
+            awaitChange();  // block in flight, or every slot is busy
+        } // end while (true)
+    } // end acquire(int, boolean)
+    
+    
+    /**
+     * Claims a victim slot for a block. A clean old block is removed from the
+     *  index at once; a dirty one stays until it has been written back.
+     * @param  slot  The victim chosen by setNextVictim().
+     * @param  blockId  The block the slot is claimed for.
+     * @pre    The calling thread holds the monitor; slot is not busy and is
+     *          no longer resident in the policy.
+     * @post   slot is busy and blockId maps to it.
+     */
+    private void claim(int slot, int blockId) {
+        busy.set(slot);
+        
+        if (dirty.get(slot)) {
+            stats.increment(CacheStats.WRITEBACK_STALLS);
+        } // end if (dirty.get(slot))
+        else if (frame[slot] != -1) {
+            index.remove(frame[slot]);
+            frame[slot] = -1;
+        } // end else if (frame[slot] != -1)
+        
+        index.put(blockId, slot);
+    } // end claim(int, int)
+    
+    
+    /**
+     * Records a read or write of a resident slot. The first use of a
+     *  prefetched slot counts as a prefetch hit and is recorded by the policy
+     *  as the first access to the block, which its fill already was.
+     * @param  slot  A resident slot that is not busy.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   slot is not prefetched; the access has been recorded; slot is
+     *          the most recently used slot.
+     */
+    private void touch(int slot) {
+        recent.push(slot);
+        
+        if (prefetched.get(slot)) {
+            prefetched.clear(slot);
+            unused.remove(slot);
+            stats.increment(CacheStats.PREFETCH_HITS);
+        } // end if (prefetched.get(slot))
+        else {
+            policy.hit(slot);
+        } // end else (!prefetched.get(slot))
+    } // end touch(int)
+    
+    
+    /**
+     * Counts an access to a block in the admission filter, if there is one.
+     *  Hits and misses are both counted, once per read, write or pin.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   The estimated frequency of blockId has been raised.
+     */
+    private void record(int blockId) {
+        if (sketch != null) {
+            sketch.record(blockId);
+        } // end if (sketch != null)
+    } // end record(int)
+    
+    
+    /**
+     * Decides whether a missing block may replace the victim chosen by the
+     *  policy: it may if there is no admission filter, or if the block has
+     *  been accessed more often of late than the block of the victim. If not,
+     *  the eviction is taken back with ReplacementPolicy.restore(), so the
+     *  victim keeps its data and its place in the policy, and is not
+     *  counted as accessed: a block turned away must not make the cold
+     *  victim look hot.
+     * @param  blockId  The block that the victim would be claimed for.
+     * @param  slot  The victim just evicted from the policy.
+     * @pre    The calling thread holds the monitor; slot is resident.
+     * @post   If false is returned, slot is resident in the policy again and
+     *          rejected is set.
+     * @return true if blockId may replace slot; false, otherwise.
+     */
+    private boolean admit(int blockId, int slot) {
+        if (sketch == null ||
+            sketch.frequency(blockId) > sketch.frequency(frame[slot])) {
+            return true;
+        } // end if (sketch == null || ...)
+        
+        policy.restore(slot, frame[slot]);
+        stats.increment(CacheStats.REJECTED_MISSES);
+        rejected = true;
+        return false;
+    } // end admit(int, int)
+    
+    
+    /**
+     * Writes the old block of a claimed slot back to disk if it is dirty.
+     *  Called without the monitor held; the slot is busy, so no other thread
+     *  touches it in the meantime. A partially valid slot is completed from
+     *  disk first.
+     * @param  slot  A slot claimed by the calling thread.
+     * @pre    slot is busy and was claimed by the calling thread.
+     * @post   If slot was dirty, its data have been written to its old block.
+     * @return true if no write-back was needed or it succeeded; false,
+     *          otherwise.
+     */
+    private boolean writeBack(int slot) {
+        return !dirty.get(slot) || writeBackSlot(slot);
+    } // end writeBack(int)
+    
+    
+    /**
+     * Completes the eviction of the old block of a claimed slot. If the old
+     *  block was written back, it is removed from the index and the eviction
+     *  is counted; if the write-back failed, the slot is given back to its
+     *  old block and released, and its eviction is taken back so the block
+     *  keeps its place in the policy, and is not counted.
+     * @param  slot  A slot claimed by the calling thread.
+     * @param  blockId  The block the slot was claimed for.
+     * @param  written  Whether the call to writeBack() succeeded.
+     * @pre    The calling thread holds the monitor and has claimed slot.
+     * @post   The old block of slot is no longer resident and its eviction
+     *          has been counted, or slot has been restored, its eviction
+     *          taken back and released.
+     * @return true if the slot may now be filled with blockId; false, if it
+     *          was restored.
+     */
+    private boolean retire(int slot, int blockId, boolean written) {
+        if (!dirty.get(slot)) {
+            return true;
+        } // end if (!dirty.get(slot))
+        
+        if (!written) {
+            index.remove(blockId);
+            policy.restore(slot, frame[slot]);
+            busy.clear(slot);
+            notifyAll();
+            return false;
+        } // end if (!written)
+        
+        index.remove(frame[slot]);
+        frame[slot] = -1;
+        dirty.clear(slot);
+        --dirtyCount;
+        stats.increment(CacheStats.EVICTIONS);
+        stats.increment(CacheStats.DIRTY_EVICTIONS);
+        return true;
+    } // end retire(int, int, boolean)
+    
+    
+    /**
+     * Records a claimed slot as holding a block and releases it to other
+     *  threads.
+     * @param  slot  A slot claimed by the calling thread.
+     * @param  blockId  The block now held in the slot.
+     * @param  isDirty  Whether the slot holds data not yet on disk.
+     * @pre    The calling thread holds the monitor and has claimed slot.
+     * @post   slot holds blockId, all of it valid, is resident in the policy,
+     *          is the most recently used slot and is no longer busy.
+     */
+    private void fill(int slot, int blockId, boolean isDirty) {
+        frame[slot]     = blockId;
+        busy.clear(slot);
+        validFrom[slot] = 0;
+        validTo[slot]   = blockSize;
+        
+        if (isDirty) {
+            markDirty(slot);
+        } // end if (isDirty)
+        
+        policy.fill(slot, blockId);
+        recent.push(slot);
+        notifyAll();
+    } // end fill(int, int, boolean)
+    
+    
+    /**
+     * Releases a claimed slot empty after its block could not be read.
+     * @param  slot  A slot claimed by the calling thread.
+     * @param  blockId  The block the slot was claimed for.
+     * @pre    The calling thread holds the monitor and has claimed slot.
+     * @post   slot is empty and no longer busy; blockId is not resident; slot
+     *          may be taken again as an empty slot.
+     */
+    private void discard(int slot, int blockId) {
+        index.remove(blockId);
+        frame[slot] = -1;
+        busy.clear(slot);
+        release(slot);
+        notifyAll();
+    } // end discard(int, int)
+    
+    
+    /**
+     * Records that a slot has become empty and idle, so that the next miss
+     *  takes it without searching. Slots being removed by resize() are not
+     *  recorded.
+     * @param  slot  A slot that holds no block and is not busy.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   slot is in the list of empty slots if it is below limit.
+     */
+    private void release(int slot) {
+        if (slot < limit) {
+            empty.push(slot);
+        } // end if (slot < limit)
+    } // end release(int)
+    
+    
+    /**
+     * Empties a clean, idle slot that is being removed by resize().
+     * @param  slot  A slot numbered limit or above.
+     * @pre    The calling thread holds the monitor; slot is neither busy,
+     *          flushing, pinned nor dirty.
+     * @post   slot is empty and forgotten by the policy.
+     */
+    private void drop(int slot) {
+        if (frame[slot] != -1) {
+            index.remove(frame[slot]);
+            policy.remove(slot);
+            stats.increment(CacheStats.EVICTIONS);
+        } // end if (frame[slot] != -1)
+        
+        frame[slot] = -1;
+        prefetched.clear(slot);
+        unused.remove(slot);
+        recent.remove(slot);
+    } // end drop(int)
+    
+    
+    /**
+     * Records that a slot now holds data not yet on disk. If a background
+     *  write-back of the slot is in flight, it is noted that the copy being
+     *  written is already out of date.
+     * @param  slot  A resident slot that was just written to.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   slot is dirty; dirtyCount and dirtySince are up to date.
+     */
+    private void markDirty(int slot) {
+        if (!dirty.get(slot)) {
+            dirty.set(slot);
+            dirtySince[slot] = System.currentTimeMillis();
+            dirtyAt[slot]    = searches;
+            ++dirtyCount;
+        } // end if (!dirty.get(slot))
+        
+        if (flushing.get(slot)) {
+            modified.set(slot);
+        } // end if (flushing.get(slot))
+    } // end markDirty(int)
+    
+    
+    /**
+     * Checks whether any slot is busy with a dirty block, or is being flushed
+     *  in the background, i.e. a write-back performed by another thread is
+     *  still outstanding.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   This CacheSegment is unchanged.
+     * @return true if a write-back is in flight; false, otherwise.
+     */
+    private boolean writeBackPending() {
+        for (int i = 0; i < frame.length; ++i) {
+            if ((busy.get(i) && dirty.get(i)) ||
+                flushing.get(i)) {
+                return true;
+            } // end if ((busy.get(i) && ...) || ...)
+        } // end for(; i < frame.length; )
+        
+        return false;
+    } // end writeBackPending()
+    
+    
+    /**
+     * Waits for another thread to release a busy slot.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   The monitor has been released and reacquired at least once.
+     */
+    private void awaitChange() {
+        try {
+            wait();
+        } catch (InterruptedException e) { }
+    } // end awaitChange()
+    
+    
+    /**
+     * Reports whether a resident slot may be replaced; slots with disk I/O in
+     *  flight, including background write-backs, may not, nor may pinned
+     *  slots, nor dirty slots while a victim is sought for a prefetch, nor
+     *  slots being removed by resize(). Every call is counted as a probe of
+     *  the current victim search. During a clean-first search, no slot may
+     *  be replaced once the window is used up, and a dirty slot only once it
+     *  is no longer shielded.
+     * @see    ReplacementPolicy.Slots#evictable(int)
+     */
+    public boolean evictable(int slot) {
+        boolean free;
+        
+        ++probes;
+        free = slot < limit && !busy.get(slot) && !flushing.get(slot) &&
+               !pinned.get(slot) && !(cleanOnly && dirty.get(slot));
+        
+        if (free && cleanFirst) {
+            free = probes <= cleanWindow &&
+                   !(dirty.get(slot) && shielded(slot));
+        } // end if (free && cleanFirst)
+        
+        return free;
+    } // end evictable(int)
+    
+    
+    /**
+     * Reports which of 64 consecutive slots may be replaced, by the same
+     *  rules as evictable(int), from the packed flags of the slots alone.
+     *  Every call is counted as one probe of the current victim search.
+     * @see    ReplacementPolicy.Slots#evictableWord(int)
+     */
+    public long evictableWord(int word) {
+        long blocked = busy.word(word) | flushing.word(word) |
+                       pinned.word(word);
+        long mask;
+        int  live;                      // slots of word below limit
+        
+        ++probes;
+        
+        if (cleanOnly) {
+            blocked |= dirty.word(word);
+        } // end if (cleanOnly)
+        
+        if (limit <= word << 6) {
+            return 0;
+        } // end if (limit <= word << 6)
+        
+        live = limit - (word << 6);     // slots from limit on are leaving
+        mask = live >= 64 ? -1L : (1L << live) - 1;
+        
+        if (cleanFirst) {
+            if (probes > cleanWindow) {
+                return 0;
+            } // end if (probes > cleanWindow)
+            
+            for (long bits = ~blocked & mask & dirty.word(word); bits != 0;
+                 bits &= bits - 1) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                
+                if (shielded(slot)) {
+                    blocked |= bits & -bits;
+                } // end if (shielded(slot))
+            } // end for (; bits != 0; )
+        } // end if (cleanFirst)
+        
+        return ~blocked & mask;
+    } // end evictableWord(int)
+    
+    
+    /**
+     * Reports that a clean-first search has made all the probes its window
+     *  allows; any other search is never cut short.
+     * @see    ReplacementPolicy.Slots#exhausted()
+     */
+    public boolean exhausted() {
+        return cleanFirst && probes >= cleanWindow;
+    } // end exhausted()
+    
+    
+    /**
+     * Checks whether a clean-first search must pass over a dirty slot. A
+     *  write-back is weighted as dirtyWeight sweeps of the slots: a slot is
+     *  shielded until there have been that many victim searches per slot
+     *  since it became dirty, about as many turns of a clock hand, and is
+     *  then taken like a clean one, so that a cold dirty block cannot
+     *  outlive every clean one.
+     * @param  slot  A dirty slot that may otherwise be replaced.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   This CacheSegment is unchanged.
+     * @return true if slot is passed over; false, if it may be taken.
+     */
+    private boolean shielded(int slot) {
+        return searches - dirtyAt[slot] < (long)dirtyWeight * frame.length;
+    } // end shielded(int)
+    
+    
+    /**
+     * Sets the index of the next victim for replacement. Every empty, idle
+     *  slot is kept in a list, fed by discard(), invalidate() and resize(),
+     *  so an empty slot is taken in constant time however the slots were
+     *  emptied, and the most recently emptied one is taken first. If none
+     *  is left and more than a quarter of the slots hold prefetched
+     *  blocks that were never used, the oldest of those is taken; otherwise,
+     *  the replacement policy picks a resident slot that is not busy. Unused
+     *  prefetched slots are replaced first only beyond that quota, so that a
+     *  stream does not lose the blocks just ahead of it. If filtered and the
+     *  admission filter is on, a victim picked by the policy is only given
+     *  up for a block that has been accessed more often of late; otherwise,
+     *  its eviction is taken back and the block is turned away. When
+     *  clean-first selection is on, the policy is first asked for a victim
+     *  with at most cleanWindow probes and only clean slots, or dirty ones
+     *  no longer shielded, to choose from; only if that fails is it asked
+     *  again with every slot to choose from.
+     * @param  blockId  The block that the victim will be claimed for.
+     * @param  filtered  Whether the admission filter may turn blockId away.
+     * @pre    The calling thread holds the monitor of this segment.
+     * @post   nextVictim has been set to the index of a slot that is either
+     *          empty or contains the best candidate for replacement and is
+     *          not busy; a resident victim has been evicted from the policy,
+     *          but is not written back here, and is counted as evicted if
+     *          it is clean. rejected tells whether blockId was turned away.
+     * @return true if a victim was found; false, if every slot is busy or
+     *          blockId was turned away.
+     */
+    private boolean setNextVictim(int blockId, boolean filtered) {
+        int count = frame.length;
+        int slot;
+        
+        rejected = false;
+        
+        if (empty.size() > 0) {
+            nextVictim = empty.newest();
+            empty.remove(nextVictim);
+            return true;
+        } // end if (empty.size() > 0)
+        
+        slot = unused.size() > count / 4 ? unused.oldest(this) : -1;
+        
+        if (slot != -1) {
+            policy.remove(slot);
+        } // end if (slot != -1)
+        else {
+            probes = 0;
+            ++searches;
+            
+            if (cleanWindow > 0 && !cleanOnly) {
+                cleanFirst = true;
+                slot       = policy.victim(blockId, this);
+                cleanFirst = false;
+            } // end if (cleanWindow > 0 && !cleanOnly)
+            
+            if (slot == -1) {
+                slot = policy.victim(blockId, this);
+            } // end if (slot == -1)
+            
+            stats.increment(CacheStats.VICTIM_SEARCHES);
+            stats.add(CacheStats.VICTIM_PROBES, probes);
+            
+            if (slot != -1 && filtered && !admit(blockId, slot)) {
+                return false;
+            } // end if (slot != -1 && filtered && ...)
+        } // end else (slot == -1)
+        
+        if (slot == -1) {
+            return false;
+        } // end if (slot == -1)
+        
+        if (!dirty.get(slot)) {
+            stats.increment(CacheStats.EVICTIONS);  // dirty ones by retire()
+        } // end if (!dirty.get(slot))
+        
+        if (prefetched.get(slot)) {
+            // read ahead for nothing
+            prefetched.clear(slot);
+            unused.remove(slot);
+            stats.increment(CacheStats.PREFETCH_WASTE);
+        } // end if (prefetched.get(slot))
+        
+        nextVictim = slot;
+        return true;
+    } // end setNextVictim(int, boolean)
+} // end class CacheSegment
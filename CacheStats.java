@@ -0,0 +1,120 @@
+/*
+ * @file    CacheStats.java
+ * @brief   This class holds the event counters of a cache: hits and misses
+ *           of reads and writes, evictions, write-backs by cause, the length
+ *           of victim searches, the outcome of read-ahead, the misses
+ *           turned away by the admission filter and those that had to wait
+ *           for a write-back. One instance is shared by all segments of a
+ *           cache. Each counter is a LongAdder, which spreads concurrent
+ *           increments over separate cells, so counting never makes threads
+ *           in different segments contend, and the counters can be read at
+ *           any time without taking any lock.
+ *           Counters are identified by index, so a snapshot of all of them
+ *           fits in a long array that can be handed through a system call.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class CacheStats {
+    public final static int READ_HITS        = 0,   // reads served in cache
+                            READ_MISSES      = 1,   // reads needing the disk
+                            WRITE_HITS       = 2,   // writes served in cache
+                            WRITE_MISSES     = 3,   // writes claiming a slot
+                            EVICTIONS        = 4,   // resident blocks replaced
+                            DIRTY_EVICTIONS  = 5,   //  of which were dirty
+                            SYNC_WRITEBACKS  = 6,   // blocks written by sync
+                            FLUSH_WRITEBACKS = 7,   // blocks written by flush
+                            CLEAN_WRITEBACKS = 8,   // blocks written by the
+                                                    //  background flusher
+                            VICTIM_SEARCHES  = 9,   // victims chosen by policy
+                            VICTIM_PROBES    = 10,  // slots examined in them;
+                                                    //  words of 64 slots for
+                                                    //  the clock
+                            PREFETCHES       = 11,  // blocks read ahead
+                            PREFETCH_HITS    = 12,  // read ahead, then used
+                            PREFETCH_WASTE   = 13,  // read ahead, never used
+                            REJECTED_MISSES  = 14,  // misses not cached, the
+                                                    //  victim being hotter
+                            WRITEBACK_STALLS = 15,  // misses that wrote
+                                                    //  their victim back first
+                            COUNT            = 16;  // number of counters
+    public final static String[] NAMES = {
+        "read hits", "read misses", "write hits", "write misses",
+        "evictions", "dirty evictions", "sync write-backs",
+        "flush write-backs", "clean write-backs", "victim searches",
+        "victim probes", "prefetches", "prefetch hits", "prefetch waste",
+        "rejected misses", "write-back stalls"
+    };
+    private LongAdder[]      counters;      // one per counter index
+    
+    
+    /**
+     * Initializes every counter to zero.
+     * @pre    None.
+     * @post   All COUNT counters are zero.
+     */
+    public CacheStats() {
+        counters = new LongAdder[COUNT];
+        
+        for (int i = 0; i < COUNT; ++i) {
+            counters[i] = new LongAdder();
+        } // end for (; i < COUNT; )
+    } // end constructor
+    
+    
+    /**
+     * Adds one to a counter.
+     * @param  counter  Index of the counter, e.g. READ_HITS.
+     * @pre    0 <= counter < COUNT.
+     * @post   The counter has been incremented.
+     */
+    public void increment(int counter) {
+        counters[counter].increment();
+    } // end increment(int)
+    
+    
+    /**
+     * Adds an amount to a counter.
+     * @param  counter  Index of the counter, e.g. VICTIM_PROBES.
+     * @param  amount  Amount to add.
+     * @pre    0 <= counter < COUNT.
+     * @post   The counter has been increased by amount.
+     */
+    public void add(int counter, long amount) {
+        counters[counter].add(amount);
+    } // end add(int, long)
+    
+    
+    /**
+     * Reports the current value of a counter. Increments made while the
+     *  value is being summed may or may not be included.
+     * @param  counter  Index of the counter, e.g. READ_HITS.
+     * @pre    0 <= counter < COUNT.
+     * @post   This CacheStats is unchanged.
+     * @return The value of the counter.
+     */
+    public long get(int counter) {
+        return counters[counter].sum();
+    } // end get(int)
+    
+    
+    /**
+     * Copies the current value of every counter into an array, as far as it
+     *  has room.
+     * @param  values  Receives the counters, indexed as the constants.
+     * @pre    values is not null.
+     * @post   values[i] holds counter i, for every i < min(length, COUNT).
+     * @return The number of counters copied.
+     */
+    public int snapshot(long values[]) {
+        int count = Math.min(values.length, COUNT);
+        
+        for (int i = 0; i < count; ++i) {
+            values[i] = counters[i].sum();
+        } // end for (; i < count; )
+        
+        return count;
+    } // end snapshot(long[])
+} // end class CacheStats
@@ -0,0 +1,73 @@
+/*
+ * @file    CacheWarmer.java
+ * @brief   This class is a kernel daemon that reads the blocks recorded in a
+ *           CacheManifest back into a cache after a boot, so that the cache
+ *           comes back warm instead of faulting its working set in one miss
+ *           at a time. The blocks are taken hottest first, in batches; each
+ *           batch is sorted by block ID before it is read, so the disk sweeps
+ *           across it in one direction rather than seeking back and forth.
+ *           Blocks are read through Cache.prefetch(), so they only take clean
+ *           slots and never replace data that is not yet on disk, and blocks
+ *           that demand misses have already read in are skipped. No more
+ *           blocks are read than the cache has slots.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class CacheWarmer extends Thread {
+    private Cache            cache;         // cache to read blocks into
+    private int[]            blocks;        // blocks to read, hottest first
+    private int              batch;         // blocks sorted and read together
+    
+    
+    /**
+     * Initializes a CacheWarmer for a cache. Blocks past the end of the disk
+     *  are dropped. The thread is a daemon, so it does not keep ThreadOS
+     *  alive, and it must still be started.
+     * @param  cache  The cache to read blocks into.
+     * @param  blocks  IDs of the blocks to read, hottest first, as returned
+     *                  by CacheManifest.load().
+     * @param  batch  Number of blocks sorted and read together.
+     * @param  diskBlocks  Number of blocks on the hard disk.
+     * @pre    cache and blocks are not null; batch > 0; diskBlocks > 0.
+     * @post   A CacheWarmer is ready to be started.
+     */
+    public CacheWarmer(Cache cache, int blocks[], int batch, int diskBlocks) {
+        int count = 0;
+        int limit = Math.min(blocks.length, cache.capacity());
+        
+        this.cache  = cache;
+        this.batch  = Math.max(1, batch);
+        this.blocks = new int[limit];
+        
+        for (int i = 0; i < blocks.length && count < limit; ++i) {
+            if (blocks[i] >= 0 && blocks[i] < diskBlocks) {
+                this.blocks[count++] = blocks[i];
+            } // end if (blocks[i] >= 0 && ...)
+        } // end for (; i < blocks.length && ...; )
+        
+        this.blocks = java.util.Arrays.copyOf(this.blocks, count);
+        setDaemon(true);
+    } // end constructor
+    
+    
+    /**
+     * Reads the blocks into the cache, one sorted batch at a time, then
+     *  returns.
+     * @pre    None.
+     * @post   Every block that fitted in a clean slot is resident.
+     */
+    @Override
+    public void run() {
+        for (int start = 0; start < blocks.length; start += batch) {
+            int[] sorted = java.util.Arrays.copyOfRange(
+                               blocks, start,
+                               Math.min(start + batch, blocks.length));
+            
+            java.util.Arrays.sort(sorted);
+            
+            for (int i = 0; i < sorted.length; ++i) {
+                cache.prefetch(sorted[i]);
+            } // end for (; i < sorted.length; )
+        } // end for (; start < blocks.length; )
+    } // end run()
+} // end class CacheWarmer
@@ -0,0 +1,182 @@
+/*
+ * @file    ClockPolicy.java
+ * @brief   This class is the second-chance (clock) replacement policy. Every
+ *           resident slot has a reference bit that is set on each access. The
+ *           clock hand sweeps the slots in order, clearing set bits, and stops
+ *           at the first slot whose bit is already clear. The bits are packed
+ *           64 to a word, and the hand moves a word at a time: one
+ *           expression over the resident, reference and evictable bits of a
+ *           word finds the next victim among its 64 slots, or clears the
+ *           reference bits of all of them that the hand passes.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class ClockPolicy implements ReplacementPolicy {
+    private int       hand;         // index of next replacement candidate
+    private int       count;        // number of slots
+    private SlotBits  reference;    // recent access bit of each slot
+    private SlotBits  resident;     // whether each slot holds a block
+    private long[]    sweptBits;    // words and bits the last sweep
+                                    //  cleared, in pairs
+    private int       sweptLength;  // entries of sweptBits in use
+    private int       sweepStart;   // where the last sweep started
+    private int       lastVictim;   // slot the last sweep chose, or -1
+    
+    
+    /**
+     * Initializes this ClockPolicy for a given number of slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   No slot is resident; the hand points at slot 0.
+     */
+    public ClockPolicy(int slots) {
+        hand        = 0;
+        count       = slots;
+        reference   = new SlotBits(slots);
+        resident    = new SlotBits(slots);
+        sweptBits   = new long[16];
+        sweptLength = 0;
+        sweepStart  = 0;
+        lastVictim  = -1;
+    } // end constructor
+    
+    
+    /**
+     * @see    ReplacementPolicy#hit(int)
+     */
+    public void hit(int slot) {
+        reference.set(slot);
+    } // end hit(int)
+    
+    
+    /**
+     * @see    ReplacementPolicy#fill(int, int)
+     */
+    public void fill(int slot, int blockId) {
+        reference.set(slot);
+        resident.set(slot);
+    } // end fill(int, int)
+    
+    
+    /**
+     * Sweeps the clock hand until it finds an evictable slot whose reference
+     *  bit is clear, clearing the reference bits of the evictable slots it
+     *  passes. Two sweeps clear every reference bit, so if none is found by
+     *  then, no slot is evictable. The sweep also ends if the search is
+     *  exhausted; either way, the hand is put back where it started. The
+     *  reference bits the sweep clears are noted, so that restore() can set
+     *  them again.
+     * @see    ReplacementPolicy#victim(int, ReplacementPolicy.Slots)
+     */
+    public int victim(int blockId, Slots slots) {
+        int start = hand;
+        
+        sweptLength = 0;
+        sweepStart  = start;
+        lastVictim  = -1;
+        
+        for (int swept = 0; swept < 2 * count && !slots.exhausted(); ) {
+            int  word   = hand >>> 6;
+            int  end    = Math.min(64, count - (word << 6));
+            long ahead  = (-1L << (hand & 63)) &  // the hand to the last slot
+                          (end == 64 ? -1L : (1L << end) - 1);
+            long passed = resident.word(word) & slots.evictableWord(word) &
+                          ahead;
+            long found  = passed & ~reference.word(word);
+            
+            if (found != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(found);
+                
+                // second chance for the slots passed over on the way
+                secondChance(word, passed & ((found & -found) - 1));
+                resident.clear(slot);
+                hand       = (slot + 1) % count;
+                lastVictim = slot;
+                return slot;
+            } // end if (found != 0)
+            
+            secondChance(word, passed);
+            swept += end - (hand & 63);
+            hand   = (word << 6) + end == count ? 0 : (word << 6) + end;
+        } // end for (; swept < 2 * count && ...; )
+        
+        hand = start;   // as after two whole sweeps
+        return -1;
+    } // end victim(int, Slots)
+    
+    
+    /**
+     * Makes the slot resident again. If it was chosen by the last sweep, the
+     *  reference bits that sweep cleared, its own among them, are set again
+     *  and the hand is put back where the sweep started, so the slots passed
+     *  over keep their second chance; otherwise, its reference bit is left
+     *  clear.
+     * @see    ReplacementPolicy#restore(int, int)
+     */
+    public void restore(int slot, int blockId) {
+        if (slot == lastVictim) {
+            for (int i = 0; i < sweptLength; i += 2) {
+                reference.set((int)sweptBits[i], sweptBits[i + 1]);
+            } // end for (; i < sweptLength; )
+            
+            hand = sweepStart;
+        } // end if (slot == lastVictim)
+        else {
+            reference.clear(slot);
+        } // end else (slot != lastVictim)
+        
+        resident.set(slot);
+        lastVictim = -1;
+    } // end restore(int, int)
+    
+    
+    /**
+     * Clears the reference bits of slots the hand passes, noting those that
+     *  were set.
+     * @param  word  Index of the word of the slots.
+     * @param  passed  Bits of the slots passed.
+     * @pre    None.
+     * @post   The bits of passed are clear in reference, and those cleared
+     *          are noted in sweptBits.
+     */
+    private void secondChance(int word, long passed) {
+        long cleared = reference.word(word) & passed;
+        
+        if (cleared != 0) {
+            if (sweptLength == sweptBits.length) {
+                sweptBits = java.util.Arrays.copyOf(sweptBits,
+                                                    2 * sweptBits.length);
+            } // end if (sweptLength == sweptBits.length)
+            
+            sweptBits[sweptLength++] = word;
+            sweptBits[sweptLength++] = cleared;
+            reference.clear(word, cleared);
+        } // end if (cleared != 0)
+    } // end secondChance(int, long)
+    
+    
+    /**
+     * @see    ReplacementPolicy#remove(int)
+     */
+    public void remove(int slot) {
+        reference.clear(slot);
+        resident.clear(slot);
+    } // end remove(int)
+    
+    
+    /**
+     * Keeps the reference bits of the remaining slots; the hand restarts at
+     *  slot 0 if it pointed past the end.
+     * @see    ReplacementPolicy#resize(int)
+     */
+    public void resize(int slots) {
+        count      = slots;
+        lastVictim = -1;    // the bits noted may be of removed slots
+        reference.resize(slots);
+        resident.resize(slots);
+        
+        if (hand >= slots) {
+            hand = 0;
+        } // end if (hand >= slots)
+    } // end resize(int)
+} // end class ClockPolicy
@@ -0,0 +1,137 @@
+/*
+ * @file    DiskBench.java
+ * @brief   This class is a benchmark for the disk schedulers. For each
+ *           scheduler in turn, it has 1, 4 and then maxThreads threads each
+ *           read and write random blocks straight to the disk, as the random
+ *           access test of Test4 does with the cache disabled, and prints
+ *           the throughput and the mean and worst time of a request. With one
+ *           thread there is never more than one request pending, so every
+ *           scheduler performs the same; the more threads, the more requests
+ *           a scheduler may choose among. The seed of each thread is fixed,
+ *           so every scheduler serves the same requests.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class DiskBench extends Thread {
+    private final static int BLOCK_SIZE = 512,  // block size of disk
+                             BLOCKS     = 990,  // less than disk block count
+                             THREADS    = 16,   // default thread limit
+                             OPS        = 20;   // default requests per thread
+    private final static int[]    SCHEDULERS = {
+        DiskScheduler.FIFO, DiskScheduler.SSTF, DiskScheduler.CLOOK
+    };
+    private final static String[] NAMES = { "FIFO", "SSTF", "C-LOOK" };
+    private int maxThreads;     // largest number of concurrent threads
+    private int ops;            // requests made by each thread
+    
+    
+    /**
+     * Sets up the size of the benchmark.
+     * @param  args  Optional arguments. If present, the first element is the
+     *                largest number of concurrent threads to run and the
+     *                second element is the number of requests per thread.
+     * @pre    None.
+     * @post   The benchmark is ready to be run.
+     */
+    public DiskBench(String[] args) {
+        maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : THREADS;
+        ops        = (args.length > 1) ? Integer.parseInt(args[1]) : OPS;
+    } // end constructor
+    
+    
+    /**
+     * Runs the benchmark under every scheduler. The last one measured,
+     *  C-LOOK, is left in place.
+     * @pre    None.
+     * @post   Throughput and latency figures are printed to standard out;
+     *          random blocks of the disk have been overwritten.
+     */
+    @Override
+    public void run() {
+        int[] threadCounts = { 1, 4, maxThreads };
+        
+        for (int s = 0; s < SCHEDULERS.length; ++s) {
+            Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, Kernel.DSCHED,
+                             SCHEDULERS[s], null);
+            
+            for (int t = 0; t < threadCounts.length; ++t) {
+                long[] result = measure(threadCounts[t]);
+                
+                SysLib.cout("  " + NAMES[s] + ", " + threadCounts[t] +
+                            " thread(s): " + result[0] + " requests/s, " +
+                            result[1] + " ms mean, " + result[2] +
+                            " ms worst\n");
+            } // end for (; t < threadCounts.length; )
+        } // end for (; s < SCHEDULERS.length; )
+        
+        SysLib.exit();
+    } // end run()
+    
+    
+    /**
+     * Measures the disk under the current scheduler. Each thread writes a
+     *  random block on every fourth request and reads one otherwise.
+     * @param  threads  Number of threads making requests concurrently.
+     * @pre    threads > 0.
+     * @post   threads * ops requests have been served.
+     * @return The requests served per second, and the mean and worst time,
+     *          in milliseconds, from making a request to its completion.
+     */
+    private long[] measure(int threads) {
+        final long[] total  = new long[threads];    // ns spent in requests
+        final long[] worst  = new long[threads];    // ns of the slowest
+        Thread[]     worker = new Thread[threads];
+        long         start;
+        long         elapsed;
+        long         sum    = 0;
+        long         max    = 0;
+        
+        for (int t = 0; t < threads; ++t) {
+            final int id = t;
+            
+            worker[t] = new Thread() {
+                public void run() {
+                    java.util.Random target = new java.util.Random(id);
+                    byte[]           data   = new byte[BLOCK_SIZE];
+                    
+                    for (int i = 0; i < ops; ++i) {
+                        int  blockId = target.nextInt(BLOCKS) + 10;
+                        long begin   = System.nanoTime();
+                        long time;
+                        
+                        if ((i & 3) == 0) {
+                            SysLib.rawwrite(blockId, data);
+                        } // end if ((i & 3) == 0)
+                        else {
+                            SysLib.rawread(blockId, data);
+                        } // end else ((i & 3) != 0)
+                        
+                        time       = System.nanoTime() - begin;
+                        total[id] += time;
+                        worst[id]  = Math.max(worst[id], time);
+                    } // end for (; i < ops; )
+                } // end run()
+            }; // end worker[t]
+        } // end for (; t < threads; )
+        
+        start = System.nanoTime();
+        
+        for (int t = 0; t < threads; ++t) {
+            worker[t].start();
+        } // end for (; t < threads; )
+        
+        for (int t = 0; t < threads; ++t) {
+            try {
+                worker[t].join();
+            } catch (InterruptedException e) { }
+            
+            sum += total[t];
+            max  = Math.max(max, worst[t]);
+        } // end for (; t < threads; )
+        
+        elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+        return new long[] { 1000L * ops * threads / elapsed,
+                            sum / ((long)ops * threads) / 1000000,
+                            max / 1000000 };
+    } // end measure(int)
+} // end class DiskBench
@@ -0,0 +1,134 @@
+/*
+ * @file    DiskImage.java
+ * @brief   This class keeps the disk image file of the simulated Disk up to
+ *           date one changed block at a time. Disk holds the whole disk in an
+ *           array and, on every sync, writes the whole array back to the
+ *           file, however few blocks have changed. Instead, a copy of each
+ *           block is kept here as the disk finishes writing it, and a sync
+ *           writes only those blocks to the file: each run of consecutive
+ *           written blocks goes out as one positional write, and the copies
+ *           are then dropped. The file has the layout Disk reads at boot, so
+ *           it holds exactly what the array of the disk holds after every
+ *           sync. A file that is missing or too short is grown with zeroes,
+ *           as Disk starts from zeroes where there is no file.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+public class DiskImage {
+    private String           path;          // name of the image file
+    private int              diskBlocks;    // number of blocks on the disk
+    private int              blockSize;     // bytes per block
+    private byte[][]         written;       // blocks written since the last
+                                            //  sync, or null where clean
+    
+    
+    /**
+     * Initializes a DiskImage for an image file. The file is neither read
+     *  nor created until sync() is called.
+     * @param  path  Name of the image file on the host.
+     * @param  diskBlocks  Number of blocks on the disk.
+     * @param  blockSize  Bytes per block.
+     * @pre    path is not null; diskBlocks > 0; blockSize > 0.
+     * @post   No block is dirty.
+     */
+    public DiskImage(String path, int diskBlocks, int blockSize) {
+        this.path       = path;
+        this.diskBlocks = diskBlocks;
+        this.blockSize  = blockSize;
+        written         = new byte[diskBlocks][];
+    } // end constructor
+    
+    
+    /**
+     * Records that the disk has written a block; the data is copied, so the
+     *  buffer may be reused at once.
+     * @param  blockId  The location of the block on the hard disk.
+     * @param  buffer  The data written to the block.
+     * @pre    0 <= blockId < diskBlocks; buffer holds at least blockSize
+     *          bytes.
+     * @post   blockId is dirty, with the data of buffer.
+     */
+    public synchronized void record(int blockId, byte buffer[]) {
+        if (written[blockId] == null) {
+            written[blockId] = new byte[blockSize];
+        } // end if (written[blockId] == null)
+        
+        System.arraycopy(buffer, 0, written[blockId], 0, blockSize);
+    } // end record(int, byte[])
+    
+    
+    /**
+     * Writes the blocks written since the last sync to the image file, one
+     *  positional write per run of consecutive blocks.
+     * @pre    No block is recorded while the sync is in progress.
+     * @post   Every block recorded before this call is in the image file and
+     *          clean, or is still dirty if writing failed.
+     * @return The number of bytes written to the file; -1 if writing failed.
+     */
+    public long sync() {
+        byte[][] blocks;
+        long     bytes = 0;
+        
+        synchronized (this) {
+            blocks  = written;
+            written = new byte[diskBlocks][];
+        } // end synchronized (this)
+        
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            FileChannel channel = file.getChannel();
+            
+            if (file.length() < (long)diskBlocks * blockSize) {
+                file.setLength((long)diskBlocks * blockSize);
+            } // end if (file.length() < ...)
+            
+            for (int first = 0; first < diskBlocks; ) {
+                int        last = first;    // one past the end of the run
+                ByteBuffer run;
+                long       offset;
+                
+                if (blocks[first] == null) {
+                    ++first;
+                    continue;
+                } // end if (blocks[first] == null)
+                
+                while (last < diskBlocks && blocks[last] != null) {
+                    ++last;
+                } // end while (last < diskBlocks && ...)
+                
+                run = ByteBuffer.allocate((last - first) * blockSize);
+                
+                for (int blockId = first; blockId < last; ++blockId) {
+                    run.put(blocks[blockId]);
+                } // end for (; blockId < last; )
+                
+                run.flip();
+                offset = (long)first * blockSize;
+                
+                while (run.hasRemaining()) {
+                    offset += channel.write(run, offset);
+                } // end while (run.hasRemaining())
+                
+                bytes += (long)(last - first) * blockSize;
+                first  = last;
+            } // end for (; first < diskBlocks; )
+        } catch (IOException e) {
+            synchronized (this) {
+                for (int blockId = 0; blockId < diskBlocks; ++blockId) {
+                    if (written[blockId] == null) {
+                        written[blockId] = blocks[blockId]; // still to write
+                    } // end if (written[blockId] == null)
+                } // end for (; blockId < diskBlocks; )
+            } // end synchronized (this)
+            
+            return -1;
+        } // end try channel.write(...)
+        
+        return bytes;
+    } // end sync()
+} // end class DiskImage
@@ -0,0 +1,314 @@
+/*
+ * @file    DiskQueue.java
+ * @brief   This class serves requests to the hard disk from a bounded
+ *           submission queue. The disk accepts only one request at a time.
+ *           Any number of threads may submit requests at once; each then
+ *           sleeps on its own request, a completion token, and a thread
+ *           sleeps before submitting only when the queue is full. The disk
+ *           is driven by its interrupts: a request submitted while the disk
+ *           is idle is handed to it at once, and when the disk interrupt
+ *           reports a completion, complete() starts the next pending request
+ *           and then wakes exactly the thread that submitted the finished
+ *           one. No thread sleeps on a condition shared with other requests,
+ *           so none is woken for a completion that is not its own, and the
+ *           disk goes from one request to the next without waiting for any
+ *           thread to be scheduled. The order in which pending requests are
+ *           served is chosen by a DiskScheduler (FIFO, SSTF or C-LOOK) from
+ *           the position the last request left the disk head at. A request
+ *           that is still pending after a maximum number of others have been
+ *           served since it was queued is served next, whatever the scheduler
+ *           prefers, so none waits forever. A sync is a barrier: it is served
+ *           after every request submitted before it, and no request submitted
+ *           after it is served first. Given a DiskImage, the queue records
+ *           each write the disk finishes in it, and a sync writes only those
+ *           blocks to the image file instead of having the disk write the
+ *           whole image. Such a sync is served without the disk by the thread
+ *           that submitted it, which is handed the request, so the host file
+ *           is never written on the disk interrupt. The monitor of this queue
+ *           is never held while calling the disk, since the disk interrupt
+ *           arrives with the monitor of the disk held.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class DiskQueue {
+    private Disk             disk;          // the device served
+    private DiskImage        image;         // blocks written since the last
+                                            //  sync, or null
+    private int              diskBlocks;    // number of blocks on the disk
+    private DiskRequest      current;       // request the disk is serving,
+                                            //  or null if it is idle
+    private DiskRequest[]    pending;       // requests to serve, oldest
+                                            //  first
+    private long[]           arrival;       // served when each was queued
+    private int              size;          // number of pending requests
+    private DiskScheduler    scheduler;     // picks the next request
+    private int              maxPasses;     // requests one may be passed over
+                                            //  for
+    private long             served;        // requests handed to the disk
+    private int              head;          // block the head was left at
+    
+    
+    /**
+     * Initializes a DiskQueue for a disk. complete() must be called on every
+     *  disk interrupt.
+     * @param  disk  The disk to serve requests on.
+     * @param  image  The image file of the disk, kept up to date by each
+     *                 sync; if null, the disk writes its whole image.
+     * @param  diskBlocks  Number of blocks on the disk; requests for blocks
+     *                      past the end fail at once.
+     * @param  capacity  Largest number of requests pending at once.
+     * @param  schedulerType  One of the constants of DiskScheduler; any other
+     *                         value selects FIFO.
+     * @param  maxPasses  Number of requests that may be served while one is
+     *                     pending before it is served regardless of the
+     *                     scheduler.
+     * @pre    disk is not null and idle; diskBlocks > 0; capacity > 0;
+     *          maxPasses > 0.
+     * @post   An empty DiskQueue is ready to serve requests.
+     */
+    public DiskQueue(Disk disk, DiskImage image, int diskBlocks,
+                     int capacity, int schedulerType, int maxPasses) {
+        this.disk        = disk;
+        this.image       = image;
+        this.diskBlocks  = diskBlocks;
+        this.maxPasses   = Math.max(1, maxPasses);
+        current          = null;
+        pending          = new DiskRequest[Math.max(1, capacity)];
+        arrival          = new long[pending.length];
+        size             = 0;
+        served           = 0;
+        head             = 0;
+        setScheduler(schedulerType);
+    } // end constructor
+    
+    
+    /**
+     * Queues a request for the disk, waiting first if the queue is full, and
+     *  hands it to the disk at once if the disk is idle. A read or write of a
+     *  block that is not on the disk, or without a buffer of a whole block,
+     *  is not queued and fails at once.
+     * @param  op  DiskRequest.READ, WRITE or SYNC.
+     * @param  blockId  The location of the block on the hard disk; ignored
+     *                   by SYNC.
+     * @param  buffer  The data of the block; ignored by SYNC.
+     * @pre    The calling thread does not hold the monitor of the disk.
+     * @post   The request is pending, being served or done.
+     * @return The request, on which the caller waits with await().
+     */
+    public DiskRequest submit(int op, int blockId, byte buffer[]) {
+        DiskRequest request = new DiskRequest(op, blockId, buffer);
+        DiskRequest start   = null;     // request to hand to the disk
+        
+        if (op != DiskRequest.SYNC &&
+            (blockId < 0 || blockId >= diskBlocks || buffer == null ||
+             buffer.length < Disk.blockSize)) {
+            request.finish(false);
+            return request;
+        } // end if (op != DiskRequest.SYNC && ...)
+        
+        synchronized (this) {
+            while (size == pending.length) {
+                try {
+                    wait();
+                } catch (InterruptedException e) { }
+            } // end while (size == pending.length)
+            
+            pending[size] = request;
+            arrival[size] = served;
+            ++size;
+            
+            if (current == null) {
+                current = start = next();
+            } // end if (current == null)
+        } // end synchronized (this)
+        
+        if (start != null) {
+            issue(start);
+        } // end if (start != null)
+        
+        return request;
+    } // end submit(int, int, byte[])
+    
+    
+    /**
+     * Completes the request the disk was serving; called on every disk
+     *  interrupt. The next pending request, if any, is handed to the disk
+     *  first, and the thread waiting for the finished request is then woken;
+     *  no other thread is. A finished write is recorded in the image before
+     *  the next request is started, so a sync after it writes it. An
+     *  interrupt that reports no completion is ignored.
+     * @pre    None.
+     * @post   The finished request is done; the disk is serving the next
+     *          request, or is idle if none is pending.
+     */
+    public void complete() {
+        DiskRequest done;
+        DiskRequest start = null;       // request to hand to the disk
+        
+        if (!disk.testAndResetReady()) {
+            return;
+        } // end if (!disk.testAndResetReady())
+        
+        synchronized (this) {
+            done    = current;
+            current = null;
+            
+            if (size > 0) {
+                current = start = next();
+            } // end if (size > 0)
+        } // end synchronized (this)
+        
+        if (image != null && done != null &&
+            done.op() == DiskRequest.WRITE) {
+            image.record(done.blockId(), done.buffer());
+        } // end if (image != null && ...)
+        
+        if (start != null) {
+            issue(start);
+        } // end if (start != null)
+        
+        if (done != null && done.op() == DiskRequest.SYNC) {
+            done.finish(true, (long)diskBlocks * Disk.blockSize);
+        } // end if (done != null && ...)
+        else if (done != null) {
+            done.finish(true);
+        } // end else if (done != null)
+    } // end complete()
+    
+    
+    /**
+     * Changes the scheduler that orders the pending requests.
+     * @param  schedulerType  One of the constants of DiskScheduler; any other
+     *                         value selects FIFO.
+     * @pre    None.
+     * @post   The next request is chosen by the new scheduler.
+     */
+    public synchronized void setScheduler(int schedulerType) {
+        switch (schedulerType) {
+            case DiskScheduler.SSTF:
+                scheduler = new SstfScheduler();
+                break;
+            case DiskScheduler.CLOOK:
+                scheduler = new CLookScheduler();
+                break;
+            default:
+                scheduler = new FifoScheduler();
+        } // end switch (schedulerType)
+    } // end setScheduler(int)
+    
+    
+    /**
+     * Takes the next request to serve off the queue. The oldest request is
+     *  taken if it is a sync or
+     *  maxPasses requests have been served since it was queued; otherwise,
+     *  the scheduler chooses among the requests ahead of the first sync.
+     * @pre    The calling thread holds the monitor; size > 0.
+     * @post   The request is no longer pending; a submitter waiting for room
+     *          has been woken; head is the block of the request.
+     * @return The request to serve next.
+     */
+    private synchronized DiskRequest next() {
+        DiskRequest request;
+        int         chosen = 0;
+        int         window = 0;     // requests ahead of the first sync
+        
+        while (window < size && pending[window].op() != DiskRequest.SYNC) {
+            ++window;
+        } // end while (window < size && ...)
+        
+        if (window > 1 && served - arrival[0] < maxPasses) {
+            chosen = scheduler.choose(pending, window, head);
+        } // end if (window > 1 && ...)
+        
+        request = pending[chosen];
+        System.arraycopy(pending, chosen + 1, pending, chosen,
+                         size - chosen - 1);
+        System.arraycopy(arrival, chosen + 1, arrival, chosen,
+                         size - chosen - 1);
+        pending[--size] = null;
+        ++served;
+        
+        if (request.op() != DiskRequest.SYNC) {
+            head = request.blockId();
+        } // end if (request.op() != DiskRequest.SYNC)
+        
+        notifyAll();
+        return request;
+    } // end next()
+    
+    
+    /**
+     * Serves a sync handed to the thread waiting for it: the blocks written
+     *  since the last sync are written to the image file, and the next
+     *  pending request is then handed to the disk. No request is served
+     *  meanwhile, as the sync is still the current one.
+     * @param  request  The sync handed to the calling thread.
+     * @pre    The calling thread does not hold the monitor of this queue or
+     *          of the disk; current == request; the disk is idle.
+     * @post   The sync is done; the disk is serving the next request, or is
+     *          idle if none is pending.
+     */
+    public void serve(DiskRequest request) {
+        DiskRequest start;
+        long        bytes = image.sync();
+        
+        synchronized (this) {
+            current = start = (size > 0) ? next() : null;
+        } // end synchronized (this)
+        
+        if (start != null) {
+            issue(start);
+        } // end if (start != null)
+        
+        request.finish(bytes >= 0, Math.max(0, bytes));
+    } // end serve(DiskRequest)
+    
+    
+    /**
+     * Hands a request to the disk. The disk refuses only requests it cannot
+     *  serve, as it is idle whenever a request is handed to it here; a
+     *  refused request fails, and the next pending one is tried instead. A
+     *  sync with an image is handed to the thread waiting for it, which
+     *  writes the image file with serve(); the host file is not written
+     *  here, as this may run on the disk interrupt.
+     * @param  request  The request taken off the queue to serve.
+     * @pre    The calling thread does not hold the monitor of this queue;
+     *          current == request; the disk is idle.
+     * @post   The disk is serving current, current is a sync handed to its
+     *          waiting thread, or current is null and the disk is idle.
+     */
+    private void issue(DiskRequest request) {
+        while (request != null) {
+            boolean accepted;
+            
+            request.start();
+            
+            if (image != null && request.op() == DiskRequest.SYNC) {
+                request.handOff(this);
+                return;
+            } // end if (image != null && ...)
+            
+            switch (request.op()) {
+                case DiskRequest.READ:
+                    accepted = disk.read(request.blockId(), request.buffer());
+                    break;
+                case DiskRequest.WRITE:
+                    accepted = disk.write(request.blockId(),
+                                          request.buffer());
+                    break;
+                default:
+                    accepted = disk.sync();
+            } // end switch (request.op())
+            
+            if (accepted) {
+                return;
+            } // end if (accepted)
+            
+            request.finish(false);
+            
+            synchronized (this) {
+                current = request = (size > 0) ? next() : null;
+            } // end synchronized (this)
+        } // end while (request != null)
+    } // end issue(DiskRequest)
+} // end class DiskQueue
@@ -0,0 +1,205 @@
+/*
+ * @file    DiskRequest.java
+ * @brief   This class is one request to the hard disk waiting in, or served
+ *           from, a DiskQueue: a read or write of one block, or a sync of the
+ *           disk image. The thread that submitted it waits on the request
+ *           itself, so it is woken only when its own request is done, never
+ *           by the completion of another. The times at which it was
+ *           submitted, accepted by the disk and finished are kept, so that
+ *           the kernel can report how long requests wait and how long they
+ *           take to serve, and so is the number of bytes a sync wrote to the
+ *           disk image file. A sync written to the image file by the queue
+ *           instead of the disk is handed to the waiting thread, which writes
+ *           the file itself before it returns.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class DiskRequest {
+    public final static int READ  = 0,      // read a block into buffer
+                            WRITE = 1,      // write buffer to a block
+                            SYNC  = 2;      // write the disk image to a file
+    private int              op;            // READ, WRITE or SYNC
+    private int              blockId;       // block to read or write
+    private byte[]           buffer;        // data of the block
+    private boolean          done;          // whether the request finished
+    private boolean          success;       // whether it was served
+    private long             submitted;     // ns time it was queued
+    private long             started;       // ns time the disk accepted it
+    private long             finished;      // ns time it was done
+    private long             bytes;         // bytes a sync wrote to the image
+    private DiskQueue        server;        // queue the waiting thread is to
+                                            //  serve this request for, or null
+    
+    
+    /**
+     * Initializes a DiskRequest that has just been submitted.
+     * @param  op  READ, WRITE or SYNC.
+     * @param  blockId  The location of the block on the hard disk; ignored
+     *                   by SYNC.
+     * @param  buffer  The data of the block; ignored by SYNC.
+     * @pre    None.
+     * @post   The request is pending.
+     */
+    public DiskRequest(int op, int blockId, byte buffer[]) {
+        this.op      = op;
+        this.blockId = blockId;
+        this.buffer  = buffer;
+        done         = false;
+        success      = false;
+        submitted    = System.nanoTime();
+        started      = submitted;
+        finished     = submitted;
+        bytes        = 0;
+        server       = null;
+    } // end constructor
+    
+    
+    /**
+     * Reports the operation of this request.
+     * @pre    None.
+     * @post   This DiskRequest is unchanged.
+     * @return READ, WRITE or SYNC.
+     */
+    public int op() {
+        return op;
+    } // end op()
+    
+    
+    /**
+     * Reports the block of this request.
+     * @pre    None.
+     * @post   This DiskRequest is unchanged.
+     * @return The location of the block on the hard disk.
+     */
+    public int blockId() {
+        return blockId;
+    } // end blockId()
+    
+    
+    /**
+     * Reports the data buffer of this request.
+     * @pre    None.
+     * @post   This DiskRequest is unchanged.
+     * @return The buffer the block is read into or written from.
+     */
+    public byte[] buffer() {
+        return buffer;
+    } // end buffer()
+    
+    
+    /**
+     * Records that the disk has accepted this request.
+     * @pre    The request is pending.
+     * @post   The service time of the request starts now.
+     */
+    public synchronized void start() {
+        started = System.nanoTime();
+    } // end start()
+    
+    
+    /**
+     * Marks this request done and wakes the thread waiting for it.
+     * @param  success  Whether the request was served.
+     * @pre    The request is pending.
+     * @post   The request is done; await() returns success.
+     */
+    public void finish(boolean success) {
+        finish(success, 0);
+    } // end finish(boolean)
+    
+    
+    /**
+     * Marks this request done, with the number of bytes it wrote to the disk
+     *  image file, and wakes the thread waiting for it.
+     * @param  success  Whether the request was served.
+     * @param  bytes  Bytes written to the image file; 0 but for a sync.
+     * @pre    The request is pending.
+     * @post   The request is done; await() returns success; bytes() returns
+     *          bytes.
+     */
+    public synchronized void finish(boolean success, long bytes) {
+        this.success = success;
+        this.bytes   = bytes;
+        finished     = System.nanoTime();
+        done         = true;
+        notifyAll();
+    } // end finish(boolean, long)
+    
+    
+    /**
+     * Hands this request to the thread waiting for it, which then serves it
+     *  on a DiskQueue and wakes from await() only once it is done.
+     * @param  queue  The queue to serve this request on.
+     * @pre    The request is pending; queue is not null.
+     * @post   The waiting thread is woken to serve the request.
+     */
+    public synchronized void handOff(DiskQueue queue) {
+        server = queue;
+        notifyAll();
+    } // end handOff(DiskQueue)
+    
+    
+    /**
+     * Waits until this request is done, serving it first if it is handed to
+     *  the calling thread.
+     * @pre    The request has been submitted to a DiskQueue; the calling
+     *          thread is the one that submitted it.
+     * @post   The request is done.
+     * @return true if the request was served; false, otherwise.
+     */
+    public boolean await() {
+        DiskQueue queue;
+        
+        synchronized (this) {
+            while (!done && server == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) { }
+            } // end while (!done && server == null)
+            
+            queue  = server;
+            server = null;
+        } // end synchronized (this)
+        
+        if (queue != null) {
+            queue.serve(this);
+        } // end if (queue != null)
+        
+        synchronized (this) {
+            return success;
+        } // end synchronized (this)
+    } // end await()
+    
+    
+    /**
+     * Reports how long this request waited to be accepted by the disk.
+     * @pre    The request is done.
+     * @post   This DiskRequest is unchanged.
+     * @return The time, in nanoseconds, from submission to acceptance.
+     */
+    public synchronized long queueTime() {
+        return started - submitted;
+    } // end queueTime()
+    
+    
+    /**
+     * Reports how long the disk took to serve this request.
+     * @pre    The request is done.
+     * @post   This DiskRequest is unchanged.
+     * @return The time, in nanoseconds, from acceptance to completion.
+     */
+    public synchronized long serviceTime() {
+        return finished - started;
+    } // end serviceTime()
+    
+    
+    /**
+     * Reports how many bytes this request wrote to the disk image file.
+     * @pre    The request is done.
+     * @post   This DiskRequest is unchanged.
+     * @return The bytes a sync wrote; 0 for a read or write.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    } // end bytes()
+} // end class DiskRequest
@@ -0,0 +1,33 @@
+/*
+ * @file    DiskScheduler.java
+ * @brief   This interface is the request-ordering strategy of a DiskQueue.
+ *           Whenever the disk is free and more than one request is pending,
+ *           the scheduler picks the one to serve next, knowing where the
+ *           head of the disk was left by the last request. Serving nearby
+ *           blocks first shortens the seeks between requests, at the risk of
+ *           leaving far ones waiting; the DiskQueue guards against that by
+ *           serving any request passed over too many times first, whatever
+ *           the scheduler would choose. All methods are called with the
+ *           monitor of the owning DiskQueue held, so implementations need no
+ *           locking of their own.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public interface DiskScheduler {
+    public final static int FIFO  = 0,  // first come, first served
+                            SSTF  = 1,  // shortest seek time first
+                            CLOOK = 2;  // circular elevator, ascending
+    
+    
+    /**
+     * Chooses the next request to serve.
+     * @param  pending  The requests that may be served next, in order of
+     *                   submission.
+     * @param  count  Number of requests in pending.
+     * @param  head  Block at which the disk head was left.
+     * @pre    count > 0; none of the requests is a SYNC.
+     * @post   The requests are unchanged.
+     * @return The index in pending of the request to serve.
+     */
+    public int choose(DiskRequest pending[], int count, int head);
+} // end interface DiskScheduler
@@ -0,0 +1,18 @@
+/*
+ * @file    FifoScheduler.java
+ * @brief   This class is the first-come, first-served disk scheduler: it
+ *           serves requests in the order they were submitted, as the disk
+ *           always has. It never starves a request, but each request may seek
+ *           across the whole disk.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class FifoScheduler implements DiskScheduler {
+    /**
+     * Chooses the oldest request.
+     * @see    DiskScheduler#choose(DiskRequest[], int, int)
+     */
+    public int choose(DiskRequest pending[], int count, int head) {
+        return 0;
+    } // end choose(DiskRequest[], int, int)
+} // end class FifoScheduler
@@ -0,0 +1,184 @@
+/*
+ * @file    FrequencySketch.java
+ * @brief   This class estimates how often each hard disk block has been
+ *           accessed recently, in a fixed amount of memory however many
+ *           distinct blocks are seen. It is a count-min sketch of 4-bit
+ *           counters, sixteen to a long: each block is counted in four
+ *           counters chosen by four hashes, and its estimate is the smallest
+ *           of them, so collisions can only make a block look more frequent,
+ *           never less. Once ten accesses per cache slot have been recorded,
+ *           every counter is halved, so the estimates follow the recent
+ *           history rather than all of it. A cache segment consults it to
+ *           decide whether a missing block is worth the slot of its victim
+ *           (TinyLFU admission). It has no locking of its own; it is used
+ *           with the monitor of its segment held.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class FrequencySketch {
+    private final static long[] SEEDS = {   // one per hash of a block
+        0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+        0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+    };
+    private final static long RESET_MASK = 0x7777777777777777L; // halves all
+    private final static long ONE_MASK   = 0x1111111111111111L; // low bits
+    private final static int  MAX_COUNT  = 15;  // largest 4-bit counter
+    private long[]           table;         // counters, 16 per long
+    private int              mask;          // table.length - 1
+    private int              additions;     // increments since the last halving
+    private int              sampleSize;    // additions that trigger halving
+    
+    
+    /**
+     * Initializes an empty FrequencySketch sized for a cache segment.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   Every block has an estimated frequency of zero.
+     */
+    public FrequencySketch(int slots) {
+        resize(slots);
+    } // end constructor
+    
+    
+    /**
+     * Records an access to a block.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   The estimate of blockId has grown by one, unless it was at its
+     *          maximum; the counters may have been halved.
+     */
+    public void record(int blockId) {
+        int     hash  = spread(blockId);
+        int     start = (hash & 3) << 2;    // which four counters of a long
+        boolean added = false;
+        
+        for (int i = 0; i < SEEDS.length; ++i) {
+            added |= increment(indexOf(hash, i), start + i);
+        } // end for (; i < SEEDS.length; )
+        
+        if (added && ++additions >= sampleSize) {
+            halve();
+        } // end if (added && ++additions >= sampleSize)
+    } // end record(int)
+    
+    
+    /**
+     * Estimates the number of recent accesses to a block.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This FrequencySketch is unchanged.
+     * @return The estimate, from 0 to 15; never less than the accesses
+     *          recorded since the last halving.
+     */
+    public int frequency(int blockId) {
+        int hash      = spread(blockId);
+        int start     = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        
+        for (int i = 0; i < SEEDS.length; ++i) {
+            int shift = (start + i) << 2;
+            
+            frequency = Math.min(frequency,
+                                 (int)(table[indexOf(hash, i)] >>> shift) &
+                                 MAX_COUNT);
+        } // end for (; i < SEEDS.length; )
+        
+        return frequency;
+    } // end frequency(int)
+    
+    
+    /**
+     * Resizes this FrequencySketch for a new number of slots. The counters
+     *  are kept if the table stays the same size; otherwise, they are reset,
+     *  and the history is built again from the accesses that follow.
+     * @param  slots  New number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   The table holds at least sixteen counters per slot.
+     */
+    public void resize(int slots) {
+        int length = 1;
+        
+        while (length < slots && length < 1 << 30) {
+            length <<= 1;
+        } // end while (length < slots && ...)
+        
+        sampleSize = (int)Math.min(10L * slots, Integer.MAX_VALUE);
+        
+        if (table == null || table.length != length) {
+            table     = new long[length];
+            mask      = length - 1;
+            additions = 0;
+        } // end if (table == null || table.length != length)
+    } // end resize(int)
+    
+    
+    /**
+     * Adds one to a counter, unless it is at its maximum.
+     * @param  i  Index of the long holding the counter.
+     * @param  j  Position of the counter in the long, from 0 to 15.
+     * @pre    None.
+     * @post   The counter has grown by one, or was already at MAX_COUNT.
+     * @return true if the counter grew; false, otherwise.
+     */
+    private boolean increment(int i, int j) {
+        int  offset = j << 2;
+        long full   = (long)MAX_COUNT << offset;
+        
+        if ((table[i] & full) == full) {
+            return false;
+        } // end if ((table[i] & full) == full)
+        
+        table[i] += 1L << offset;
+        return true;
+    } // end increment(int, int)
+    
+    
+    /**
+     * Halves every counter, so that old accesses weigh half as much as new
+     *  ones. The truncated halves are taken off the number of additions.
+     * @pre    None.
+     * @post   Every counter and additions have been halved.
+     */
+    private void halve() {
+        int odd = 0;    // counters that lose a half to truncation
+        
+        for (int i = 0; i < table.length; ++i) {
+            odd      += Long.bitCount(table[i] & ONE_MASK);
+            table[i]  = (table[i] >>> 1) & RESET_MASK;
+        } // end for (; i < table.length; )
+        
+        additions = (additions >>> 1) - (odd >>> 2);
+    } // end halve()
+    
+    
+    /**
+     * Selects the long holding one of the four counters of a block.
+     * @param  hash  The spread hash of the block.
+     * @param  i  Which of the four counters, from 0 to 3.
+     * @pre    None.
+     * @post   This FrequencySketch is unchanged.
+     * @return An index into table.
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        
+        h += h >>> 32;
+        return (int)h & mask;
+    } // end indexOf(int, int)
+    
+    
+    /**
+     * Scrambles a block ID, so that runs of consecutive blocks are spread
+     *  over the whole table.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   None.
+     * @return The scrambled block ID.
+     */
+    private static int spread(int blockId) {
+        int h = ((blockId >>> 16) ^ blockId) * 0x45D9F3B;
+        
+        h = ((h >>> 16) ^ h) * 0x45D9F3B;
+        return (h >>> 16) ^ h;
+    } // end spread(int)
+} // end class FrequencySketch
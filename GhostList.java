@@ -0,0 +1,218 @@
+/*
+ * @file    GhostList.java
+ * @brief   This class is a bounded history of block IDs in the order they
+ *           were added, used by replacement policies to remember recently
+ *           evicted blocks. Entries are linked in int arrays and found through
+ *           a BlockIndex, so adding, finding and removing a block ID, even
+ *           from the middle of the history, costs constant time and creates
+ *           no objects. Unused entries are chained into a free list. When the
+ *           history is full, adding a block ID forgets the oldest one.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class GhostList {
+    private final static int NONE = -1; // end of list marker
+    private int[]            blocks;    // block ID of each entry
+    private int[]            newer;     // entry added after each entry
+    private int[]            older;     // entry added before each entry
+    private int              head;      // newest entry
+    private int              tail;      // oldest entry
+    private int              free;      // first unused entry, chained
+                                        //  through older
+    private int              size;      // number of block IDs remembered
+    private BlockIndex       index;     // block ID to entry
+    
+    
+    /**
+     * Initializes an empty GhostList that remembers up to a given number of
+     *  block IDs.
+     * @param  capacity  Largest number of block IDs remembered at once.
+     * @pre    capacity > 0.
+     * @post   This GhostList is empty.
+     */
+    public GhostList(int capacity) {
+        allocate(Math.max(1, capacity));
+    } // end constructor
+    
+    
+    /**
+     * Checks whether a block ID is remembered.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   This GhostList is unchanged.
+     * @return true if blockId is in this GhostList; false, otherwise.
+     */
+    public boolean contains(int blockId) {
+        return index.get(blockId) != NONE;
+    } // end contains(int)
+    
+    
+    /**
+     * Remembers a block ID as the newest entry, moving it if it is already
+     *  remembered. If the list is full, the oldest block ID is forgotten to
+     *  make room.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    blockId >= 0.
+     * @post   blockId is the newest entry; at most capacity are remembered.
+     */
+    public void add(int blockId) {
+        int entry;
+        
+        remove(blockId);
+        
+        if (free == NONE) {
+            dropOldest();
+        } // end if (free == NONE)
+        
+        entry         = free;
+        free          = older[entry];
+        blocks[entry] = blockId;
+        newer[entry]  = NONE;
+        older[entry]  = head;
+        
+        if (head != NONE) {
+            newer[head] = entry;
+        } // end if (head != NONE)
+        else {
+            tail = entry;
+        } // end else (head == NONE)
+        
+        head = entry;
+        index.put(blockId, entry);
+        ++size;
+    } // end add(int)
+    
+    
+    /**
+     * Forgets a block ID, wherever it is in the list.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    None.
+     * @post   blockId is not in this GhostList.
+     * @return true if blockId was remembered; false, otherwise.
+     */
+    public boolean remove(int blockId) {
+        int entry = index.remove(blockId);
+        
+        if (entry == NONE) {
+            return false;
+        } // end if (entry == NONE)
+        
+        unlink(entry);
+        return true;
+    } // end remove(int)
+    
+    
+    /**
+     * Forgets the oldest block ID.
+     * @pre    This GhostList is not empty.
+     * @post   The oldest block ID is no longer remembered.
+     */
+    public void dropOldest() {
+        index.remove(blocks[tail]);
+        unlink(tail);
+    } // end dropOldest()
+    
+    
+    /**
+     * Changes the number of block IDs this list can remember, forgetting the
+     *  oldest ones beyond the new capacity and keeping the rest in order.
+     * @param  capacity  New largest number of block IDs remembered.
+     * @pre    capacity > 0.
+     * @post   At most capacity block IDs are remembered.
+     */
+    public void resize(int capacity) {
+        int[] kept;
+        
+        while (size > capacity) {
+            dropOldest();
+        } // end while (size > capacity)
+        
+        kept = new int[size];
+        
+        for (int i = 0, entry = tail; entry != NONE; entry = newer[entry]) {
+            kept[i++] = blocks[entry];
+        } // end for (; entry != NONE; )
+        
+        allocate(Math.max(1, capacity));
+        
+        for (int i = 0; i < kept.length; ++i) {
+            add(kept[i]);
+        } // end for (; i < kept.length; )
+    } // end resize(int)
+    
+    
+    /**
+     * Reports the number of block IDs remembered.
+     * @pre    None.
+     * @post   This GhostList is unchanged.
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    } // end size()
+    
+    
+    /**
+     * Checks whether no block ID is remembered.
+     * @pre    None.
+     * @post   This GhostList is unchanged.
+     * @return true if this GhostList is empty; false, otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    } // end isEmpty()
+    
+    
+    /**
+     * Unlinks an entry from the list and returns it to the free list. Its
+     *  block ID must already have been removed from the index.
+     * @param  entry  An entry in use.
+     * @pre    entry is linked into the list.
+     * @post   entry is free.
+     */
+    private void unlink(int entry) {
+        if (newer[entry] != NONE) {
+            older[newer[entry]] = older[entry];
+        } // end if (newer[entry] != NONE)
+        else {
+            head = older[entry];
+        } // end else (newer[entry] == NONE)
+        
+        if (older[entry] != NONE) {
+            newer[older[entry]] = newer[entry];
+        } // end if (older[entry] != NONE)
+        else {
+            tail = newer[entry];
+        } // end else (older[entry] == NONE)
+        
+        older[entry] = free;
+        free         = entry;
+        --size;
+    } // end unlink(int)
+    
+    
+    /**
+     * Replaces the tables with empty ones for a given number of entries,
+     *  every entry on the free list. Most lookups are of blocks that are not
+     *  remembered, so the index is kept sparser than BlockIndex keeps itself.
+     * @param  capacity  Number of entries.
+     * @pre    capacity > 0.
+     * @post   This GhostList is empty.
+     */
+    private void allocate(int capacity) {
+        blocks = new int[capacity];
+        newer  = new int[capacity];
+        older  = new int[capacity];
+        index  = new BlockIndex(2 * capacity);  // a quarter full, so a
+                                                 //  miss probes briefly
+        head   = NONE;
+        tail   = NONE;
+        size   = 0;
+        
+        for (int i = 0; i < capacity; ++i) {
+            older[i] = i + 1 < capacity ? i + 1 : NONE;
+        } // end for (; i < capacity; )
+        
+        free = 0;
+    } // end allocate(int)
+} // end class GhostList
@@ -0,0 +1,87 @@
+/*
+ * @file    HeapStore.java
+ * @brief   This class is the storage of a cache segment that keeps the data
+ *           of each slot in its own Java byte array, as the cache always has.
+ *           The disk reads and writes into the arrays directly, with no
+ *           copy, but every slot is an object on the heap that the garbage
+ *           collector must trace, which matters once there are millions.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.nio.ByteBuffer;
+
+
+public class HeapStore implements BlockStore {
+    private int              blockSize;     // bytes per slot
+    private volatile byte[][] blocks;       // data of each slot
+    
+    
+    /**
+     * Initializes a HeapStore with a given number of slots.
+     * @param  blockSize  Bytes per hard disk block.
+     * @param  slots  Number of slots.
+     * @pre    blockSize > 0; slots > 0.
+     * @post   Every slot holds zeroes.
+     */
+    public HeapStore(int blockSize, int slots) {
+        this.blockSize = blockSize;
+        blocks         = new byte[0][];
+        resize(slots);
+    } // end constructor
+    
+    
+    /**
+     * @see    BlockStore#get(int, int, byte[], int, int)
+     */
+    public void get(int slot, int position, byte dst[], int offset,
+                    int length) {
+        System.arraycopy(blocks[slot], position, dst, offset, length);
+    } // end get(int, int, byte[], int, int)
+    
+    
+    /**
+     * @see    BlockStore#put(int, int, byte[], int, int)
+     */
+    public void put(int slot, int position, byte src[], int offset,
+                    int length) {
+        System.arraycopy(src, offset, blocks[slot], position, length);
+    } // end put(int, int, byte[], int, int)
+    
+    
+    /**
+     * @see    BlockStore#view(int)
+     */
+    public ByteBuffer view(int slot) {
+        return ByteBuffer.wrap(blocks[slot]);
+    } // end view(int)
+    
+    
+    /**
+     * @see    BlockStore#read(int, int)
+     */
+    public void read(int slot, int blockId) {
+        SysLib.rawread(blockId, blocks[slot]);
+    } // end read(int, int)
+    
+    
+    /**
+     * @see    BlockStore#write(int, int)
+     */
+    public void write(int slot, int blockId) {
+        SysLib.rawwrite(blockId, blocks[slot]);
+    } // end write(int, int)
+    
+    
+    /**
+     * @see    BlockStore#resize(int)
+     */
+    public void resize(int slots) {
+        byte[][] resized = java.util.Arrays.copyOf(blocks, slots);
+        
+        for (int i = blocks.length; i < slots; ++i) {
+            resized[i] = new byte[blockSize];
+        } // end for (; i < slots; )
+        
+        blocks = resized;
+    } // end resize(int)
+} // end class HeapStore
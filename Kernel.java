@@ -26,6 +26,8 @@ public class Kernel
     public final static int CWRITE  = 11; // SysLib.cwrite(int blk, byte b[])
     public final static int CSYNC   = 12; // SysLib.csync( )
     public final static int CFLUSH  = 13; // SysLib.cflush( )
+    public final static int CSTATS  = 28; // copy cache counters into
+                                          //  long args[], see CacheStats
 
     // System calls to be added in Project
     public final static int OPEN    = 14; // SysLib.open( String fileName )
@@ -36,6 +38,41 @@ public class Kernel
     public final static int FORMAT  = 18; // SysLib.format( int files )
     public final static int DELETE  = 19; // SysLib.delete( String fileName )
 
+    // Asynchronous cache system calls
+    public final static int ACREAD  = 20; // cread( int blk, byte b[] ), but
+                                          //  returns a handle at once
+    public final static int ACWRITE = 21; // cwrite( int blk, byte b[] ), but
+                                          //  returns a handle at once
+    public final static int CWAIT   = 22; // wait for handle param to finish
+    public final static int CPOLL   = 23; // check whether handle param is done
+
+    // Vectored cache system calls; args = { int blks[], byte b[] }, where b[]
+    // holds blks.length blocks back to back
+    public final static int CREADV  = 24; // read every block of blks into b
+    public final static int CWRITEV = 25; // write b to every block of blks
+
+    // Partial-block cache system calls; param = blk,
+    // args = { Integer offset, Integer length, byte b[] }
+    public final static int CREADP  = 26; // read length bytes at offset into b
+    public final static int CWRITEP = 27; // write length bytes of b at offset
+
+    // Latency statistics system call; param = a system call number, or
+    // -COND_DISK_REQ for the time disk requests are queued or -COND_DISK_FIN
+    // for the time they are served; args = long[] that receives
+    // { count, 50th, 90th, 99th, 99.9th percentile, max } in ns
+    public final static int LATENCY = 29;
+
+    // Cache resize system call; param = new number of cache blocks
+    public final static int CRESIZE = 30;
+
+    // Disk scheduler system call; param = DiskScheduler.FIFO, SSTF or CLOOK
+    public final static int DSCHED  = 31;
+
+    // Disk sync statistics system call; args = long[] that receives
+    // { syncs, bytes the last sync wrote, bytes all syncs wrote }; returns
+    // the number of counters copied
+    public final static int DSTATS  = 32;
+
     // Predefined file descriptors
     public final static int STDIN  = 0;
     public final static int STDOUT = 1;
@@ -44,25 +81,88 @@ public class Kernel
     // Return values
     public final static int OK = 0;
     public final static int ERROR = -1;
+    public final static int PENDING = 1; // CPOLL: request not finished yet
 
     // System thread references
     private static Scheduler scheduler;
     private static Disk disk;
+    private static DiskQueue diskQueue;
+    private static MappedDisk mappedDisk;
     private static Cache cache;
+    private static CacheFlusher flusher;
+    private static ReadAhead readAhead;
+    private static AsyncCache asyncCache;
+    private static CacheWarmer warmer;
 
     // Synchronized Queues
     private static SyncQueue waitQueue;  // for threads to wait for their child
-    private static SyncQueue ioQueue;    // I/O queue
 
-    private final static int COND_DISK_REQ = 1; // wait condition 
-    private final static int COND_DISK_FIN = 2; // wait condition
+    // Cache configuration
+    private final static int CACHE_BLOCKS   = 10; // slots in the block cache
+    private final static int CACHE_SEGMENTS = 1;  // independently locked parts
+    private final static int CACHE_POLICY   = ReplacementPolicy.CLOCK;
+    private final static int CACHE_STORAGE  = BlockStore.HEAP; // or SLAB
+    private final static boolean CACHE_ADMISSION = false; // scan-resistant
+                                                          //  admission filter
+    private final static int CACHE_CLEAN_WINDOW = 0;  // probes to find a clean
+                                                      //  victim, 0 for none
+    private final static int CACHE_DIRTY_WEIGHT = 2;  // sweeps a dirty slot is
+                                                      //  passed over for
+    private final static int CACHE_DIRTY_HIGH = 60;   // % dirty: flush now
+    private final static int CACHE_DIRTY_LOW  = 30;   // % dirty: flush down to
+    private final static int CACHE_DIRTY_AGE  = 5000; // ms a block stays dirty
+    private final static int CACHE_READ_AHEAD = 32;   // max window, 0 for none
+    private final static int DISK_BLOCKS      = 1000; // blocks on the disk
+    private final static boolean DISK_MAPPED = false; // map the disk image
+                                                      //  instead of Disk
+    private final static String DISK_IMAGE    = "DISK"; // disk image file
+    private final static int DISK_QUEUE       = 64;   // disk requests pending
+                                                      //  at once
+    private final static int DISK_SCHEDULER   = DiskScheduler.CLOOK;
+    private final static int DISK_AGING       = 256;  // requests served before
+                                                      //  a waiting one must be
+    private final static String CACHE_MANIFEST = "CACHE"; // hot blocks kept
+                                                          //  across boots
+    private final static int CACHE_WARM_BATCH = 32;   // blocks sorted and read
+                                                      //  together at boot
+    private final static int CACHE_ASYNC_WORKERS  = 4;  // async requests served
+                                                        //  at once
+    private final static int CACHE_ASYNC_REQUESTS = 64; // async requests
+                                                        //  outstanding at once
+
+    private final static int COND_DISK_REQ = 1; // disk wait: queued
+    private final static int COND_DISK_FIN = 2; // disk wait: in service
+
+    // Latency histograms, in nanoseconds
+    private final static int SYSCALLS = 33; // one past the last system call
+    private final static double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static LatencyHistogram[] syscallTime  // by system call number
+	= LatencyHistogram.array( SYSCALLS );
+    private static LatencyHistogram[] diskWait     // by wait condition
+	= LatencyHistogram.array( COND_DISK_FIN + 1 );
+
+    // Disk sync statistics: { syncs, bytes last written, bytes written }
+    private static long[] syncStats = new long[3];
 
     // Standard input
     private static BufferedReader input
 	= new BufferedReader( new InputStreamReader( System.in ) );
 
-    // The heart of Kernel
+    // The heart of Kernel; times every system call
     public static int interrupt( int irq, int cmd, int param, Object args ) {
+	if ( irq != INTERRUPT_SOFTWARE || cmd < 0 || cmd >= SYSCALLS )
+	    return dispatch( irq, cmd, param, args );
+
+	long start = System.nanoTime( );
+	try {
+	    return dispatch( irq, cmd, param, args );
+	} finally {
+	    syscallTime[cmd].record( System.nanoTime( ) - start );
+	}
+    }
+
+    // Serving an interrupt
+    private static int dispatch( int irq, int cmd, int param, Object args ) {
 	TCB myTcb;
 	switch( irq ) {
 	case INTERRUPT_SOFTWARE: // System calls
@@ -71,17 +171,71 @@ public class Kernel
 		// instantiate and start a scheduler
 		scheduler = new Scheduler( ); 
 		scheduler.start( );
-		
-		// instantiate and start a disk
-		disk = new Disk( 1000 );
-		disk.start( );
+
+		// map the disk image, or instantiate and start a disk
+		if ( DISK_MAPPED ) {
+		    try {
+			mappedDisk = new MappedDisk( DISK_IMAGE, DISK_BLOCKS,
+						     Disk.blockSize );
+		    } catch ( IOException e ) {
+			System.out.println( "threadOS: cannot map " +
+					    DISK_IMAGE + ": " + e );
+		    }
+		}
+		if ( mappedDisk == null ) {
+		    disk = new Disk( DISK_BLOCKS );
+		    disk.start( );
+
+		    // instantiate the disk request queue, driven by disk
+		    // interrupts; a sync writes only the blocks written
+		    // since the last one to the disk image
+		    diskQueue = new DiskQueue( disk,
+					       new DiskImage( DISK_IMAGE,
+							      DISK_BLOCKS,
+							      Disk.blockSize ),
+					       DISK_BLOCKS, DISK_QUEUE,
+					       DISK_SCHEDULER, DISK_AGING );
+		}
 
 		// instantiate a cache memory
-		cache = new Cache( disk.blockSize, 10 );
+		cache = new Cache( Disk.blockSize, CACHE_BLOCKS, CACHE_SEGMENTS,
+				   CACHE_POLICY, CACHE_STORAGE,
+				   CACHE_ADMISSION );
+		cache.setCleanFirst( CACHE_CLEAN_WINDOW, CACHE_DIRTY_WEIGHT );
 
 		// instantiate synchronized queues
-		ioQueue = new SyncQueue( );
 		waitQueue = new SyncQueue( scheduler.getMaxThreads( ) );
+
+		// instantiate and start the cache write-back daemon
+		flusher = new CacheFlusher( cache, CACHE_DIRTY_HIGH,
+					    CACHE_DIRTY_LOW, CACHE_DIRTY_AGE );
+		cache.setFlusher( flusher );
+		flusher.start( );
+
+		// instantiate and start the sequential read-ahead daemon
+		if ( CACHE_READ_AHEAD > 0 ) {
+		    readAhead = new ReadAhead( cache, CACHE_READ_AHEAD,
+					       DISK_BLOCKS );
+		    cache.setReadAhead( readAhead );
+		    readAhead.start( );
+		}
+
+		// instantiate the asynchronous cache request workers
+		asyncCache = new AsyncCache( cache, CACHE_ASYNC_WORKERS,
+					     CACHE_ASYNC_REQUESTS );
+
+		// warm the cache with the blocks hot at the last shutdown,
+		// and record them again at flush and shutdown
+		CacheManifest manifest = new CacheManifest( CACHE_MANIFEST );
+		cache.setManifest( manifest );
+		warmer = new CacheWarmer( cache, manifest.load( ),
+					  CACHE_WARM_BATCH, DISK_BLOCKS );
+		warmer.start( );
+		Runtime.getRuntime( ).addShutdownHook( new Thread( ) {
+			public void run( ) {
+			    cache.saveManifest( );
+			}
+		    } );
 		return OK;
 	    case EXEC:
 		return sysExec( ( String[] )args );
@@ -109,23 +263,11 @@ public class Kernel
 		scheduler.sleepThread( param ); // param = milliseconds
 		return OK;
 	    case RAWREAD: // read a block of data from disk
-		while ( disk.read( param, ( byte[] )args ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_REQ );
-		while ( disk.testAndResetReady( ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_FIN );
-		return OK;
+		return diskIo( DiskRequest.READ, param, ( byte[] )args );
 	    case RAWWRITE: // write a block of data to disk
-		while ( disk.write( param, ( byte[] )args ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_REQ );
-		while ( disk.testAndResetReady( ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_FIN );
-		return OK;
+		return diskIo( DiskRequest.WRITE, param, ( byte[] )args );
 	    case SYNC:     // synchronize disk data to a real file
-		while ( disk.sync( ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_REQ );
-		while ( disk.testAndResetReady( ) == false )
-		    ioQueue.enqueueAndSleep( COND_DISK_FIN );
-		return OK;
+		return diskIo( DiskRequest.SYNC, 0, null );
 	    case READ:
 		switch ( param ) {
 		case STDIN:
@@ -176,6 +318,8 @@ public class Kernel
 	    case CFLUSH:  // to be implemented in assignment 4
 		cache.flush( );
 		return OK;
+	    case CSTATS:  // returns the number of counters copied
+		return cache.stats( ).snapshot( ( long[] )args );
 	    case OPEN:    // to be implemented in project
 		return OK;
 	    case CLOSE:   // to be implemented in project
@@ -188,15 +332,58 @@ public class Kernel
 		return OK;
 	    case DELETE:  // to be implemented in project
 		return OK;
+	    case ACREAD:  // returns a handle, or ERROR if too many outstanding
+		return asyncCache.submit( false, param, ( byte[] )args );
+	    case ACWRITE: // returns a handle, or ERROR if too many outstanding
+		return asyncCache.submit( true, param, ( byte[] )args );
+	    case CWAIT:   // param = handle; returns OK or ERROR
+		return asyncCache.await( param ) == AsyncCache.SUCCEEDED
+		    ? OK : ERROR;
+	    case CPOLL:   // param = handle; returns OK, ERROR or PENDING
+		switch ( asyncCache.poll( param ) ) {
+		case AsyncCache.SUCCEEDED:
+		    return OK;
+		case AsyncCache.PENDING:
+		    return PENDING;
+		}
+		return ERROR;
+	    case CREADV:
+		return cache.readv( ( int[] )( ( Object[] )args )[0],
+				    ( byte[] )( ( Object[] )args )[1] )
+		    ? OK : ERROR;
+	    case CWRITEV:
+		return cache.writev( ( int[] )( ( Object[] )args )[0],
+				     ( byte[] )( ( Object[] )args )[1] )
+		    ? OK : ERROR;
+	    case CRESIZE:
+		return cache.resize( param ) ? OK : ERROR;
+	    case DSCHED:
+		if ( diskQueue == null || param < DiskScheduler.FIFO ||
+		     param > DiskScheduler.CLOOK )
+		    return ERROR;	// no queue in front of a mapped disk
+		diskQueue.setScheduler( param );
+		return OK;
+	    case LATENCY:
+		return sysLatency( param, ( long[] )args );
+	    case DSTATS:
+		return sysDiskStats( ( long[] )args );
+	    case CREADP:
+		return cache.read( param,
+				   ( ( Integer )( ( Object[] )args )[0] ).intValue( ),
+				   ( ( Integer )( ( Object[] )args )[1] ).intValue( ),
+				   ( byte[] )( ( Object[] )args )[2] ) ? OK : ERROR;
+	    case CWRITEP:
+		return cache.write( param,
+				    ( ( Integer )( ( Object[] )args )[0] ).intValue( ),
+				    ( ( Integer )( ( Object[] )args )[1] ).intValue( ),
+				    ( byte[] )( ( Object[] )args )[2] ) ? OK : ERROR;
 	    }
 	    return ERROR;
 	case INTERRUPT_DISK: // Disk interrupts
-	    // wake up the thread waiting for a service completion
-	    ioQueue.dequeueAndWakeup( COND_DISK_FIN );
-
-	    // wake up the thread waiting for a request acceptance
-	    ioQueue.dequeueAndWakeup( COND_DISK_REQ );
-
+	    // complete the request in service, waking only the thread that
+	    // submitted it, and start the next pending request
+	    if ( diskQueue != null )
+		diskQueue.complete( );
 	    return OK;
 	case INTERRUPT_IO:   // other I/O interrupts (not implemented)
 	    return OK;
@@ -204,6 +391,58 @@ public class Kernel
 	return OK;
     }
 
+    // Queuing a disk request and sleeping until it is done, or serving it
+    // at once from the mapped disk image; the time it waited for the disk
+    // and the time it took are recorded, as are the bytes a sync wrote
+    private static int diskIo( int op, int blockId, byte buffer[] ) {
+	DiskRequest request;
+	if ( mappedDisk != null )
+	    request = mappedDisk.submit( op, blockId, buffer );
+	else
+	    request = diskQueue.submit( op, blockId, buffer );
+	boolean success = request.await( );
+	diskWait[COND_DISK_REQ].record( request.queueTime( ) );
+	diskWait[COND_DISK_FIN].record( request.serviceTime( ) );
+	if ( op == DiskRequest.SYNC && success ) {
+	    synchronized ( syncStats ) {
+		syncStats[0]++;
+		syncStats[1] = request.bytes( );
+		syncStats[2] += request.bytes( );
+	    }
+	}
+	return success ? OK : ERROR;
+    }
+
+    // Copying the disk sync statistics
+    private static int sysDiskStats( long result[] ) {
+	if ( result == null )
+	    return ERROR;
+	synchronized ( syncStats ) {
+	    int count = Math.min( result.length, syncStats.length );
+	    System.arraycopy( syncStats, 0, result, 0, count );
+	    return count;
+	}
+    }
+
+    // Reporting the latency percentiles of a system call or disk wait
+    private static int sysLatency( int which, long result[] ) {
+	LatencyHistogram histogram;
+	if ( which >= 0 && which < SYSCALLS )
+	    histogram = syscallTime[which];
+	else if ( which == -COND_DISK_REQ || which == -COND_DISK_FIN )
+	    histogram = diskWait[-which];
+	else
+	    return ERROR;
+	if ( result == null || result.length < PERCENTILES.length + 2 )
+	    return ERROR;
+
+	result[0] = histogram.count( );
+	for ( int i = 0; i < PERCENTILES.length; i++ )
+	    result[i + 1] = histogram.percentile( PERCENTILES[i] );
+	result[PERCENTILES.length + 1] = histogram.max( );
+	return OK;
+    }
+
     // Spawning a new thread
     private static int sysExec( String args[] ) {
 	String thrName = args[0]; // args[0] has a thread name
@@ -0,0 +1,174 @@
+/*
+ * @file    LatencyHistogram.java
+ * @brief   This class is a histogram of durations, in nanoseconds, that may
+ *           be recorded into by many threads at once and read at any time.
+ *           Durations below 16 ns have a bucket each; longer ones fall into
+ *           eight buckets per power of two, so every bucket is at most 12.5%
+ *           wide relative to its values and the whole range of a long fits in
+ *           fewer than 500 buckets. Recording is a single atomic increment of
+ *           its bucket, with no lock; percentiles are computed from the
+ *           buckets when they are asked for, and are reported as the largest
+ *           value of the bucket they fall into.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+public class LatencyHistogram {
+    private final static int LINEAR  = 16,  // values with a bucket each
+                             SUB     = 8,   // buckets per power of two
+                             SUBBITS = 3,   // log2(SUB)
+                             BUCKETS = LINEAR + (63 - 4) * SUB;
+    private AtomicLongArray  counts;        // values recorded in each bucket
+    private AtomicLong       max;           // largest value recorded
+    
+    
+    /**
+     * Initializes an empty LatencyHistogram.
+     * @pre    None.
+     * @post   No value has been recorded.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        max    = new AtomicLong(0);
+    } // end constructor
+    
+    
+    /**
+     * Creates an array of empty histograms, e.g. one per system call.
+     * @param  size  Number of histograms.
+     * @pre    size >= 0.
+     * @post   None.
+     * @return An array of size new histograms.
+     */
+    public static LatencyHistogram[] array(int size) {
+        LatencyHistogram[] histograms = new LatencyHistogram[size];
+        
+        for (int i = 0; i < size; ++i) {
+            histograms[i] = new LatencyHistogram();
+        } // end for (; i < size; )
+        
+        return histograms;
+    } // end array(int)
+    
+    
+    /**
+     * Records one duration. Negative durations, e.g. from a clock step, are
+     *  recorded as zero.
+     * @param  nanos  The duration, in nanoseconds.
+     * @pre    None.
+     * @post   The duration has been counted in its bucket.
+     */
+    public void record(long nanos) {
+        long largest;
+        
+        if (nanos < 0) {
+            nanos = 0;
+        } // end if (nanos < 0)
+        
+        counts.incrementAndGet(bucketOf(nanos));
+        
+        while (nanos > (largest = max.get()) &&
+               !max.compareAndSet(largest, nanos)) { }
+    } // end record(long)
+    
+    
+    /**
+     * Reports the number of durations recorded.
+     * @pre    None.
+     * @post   This LatencyHistogram is unchanged.
+     * @return The number of calls to record() so far.
+     */
+    public long count() {
+        long total = 0;
+        
+        for (int i = 0; i < BUCKETS; ++i) {
+            total += counts.get(i);
+        } // end for (; i < BUCKETS; )
+        
+        return total;
+    } // end count()
+    
+    
+    /**
+     * Reports a percentile of the recorded durations.
+     * @param  fraction  The percentile as a fraction, e.g. 0.99 for the 99th
+     *                    percentile.
+     * @pre    0 <= fraction <= 1.
+     * @post   This LatencyHistogram is unchanged.
+     * @return An upper bound, within one bucket, of the duration below which
+     *          fraction of the recorded durations lie; 0 if none has been
+     *          recorded.
+     */
+    public long percentile(double fraction) {
+        long total = count();
+        long rank  = Math.max(1, (long)Math.ceil(fraction * total));
+        long seen  = 0;
+        
+        if (total == 0) {
+            return 0;
+        } // end if (total == 0)
+        
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            
+            if (seen >= rank) {
+                return Math.min(highestOf(i), max.get());
+            } // end if (seen >= rank)
+        } // end for (; i < BUCKETS; )
+        
+        return max.get();   // buckets grew while they were summed
+    } // end percentile(double)
+    
+    
+    /**
+     * Reports the largest duration recorded.
+     * @pre    None.
+     * @post   This LatencyHistogram is unchanged.
+     * @return The largest duration, in nanoseconds; 0 if none.
+     */
+    public long max() {
+        return max.get();
+    } // end max()
+    
+    
+    /**
+     * Selects the bucket of a duration.
+     * @param  nanos  A non-negative duration.
+     * @pre    nanos >= 0.
+     * @post   This LatencyHistogram is unchanged.
+     * @return The index of the bucket counting nanos.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < LINEAR) {
+            return (int)nanos;
+        } // end if (nanos < LINEAR)
+        
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);  // >= 4
+        
+        return LINEAR + (exponent - 4) * SUB +
+               (int)((nanos >>> (exponent - SUBBITS)) & (SUB - 1));
+    } // end bucketOf(long)
+    
+    
+    /**
+     * Reports the largest duration that falls into a bucket.
+     * @param  bucket  Index of a bucket.
+     * @pre    0 <= bucket < BUCKETS.
+     * @post   This LatencyHistogram is unchanged.
+     * @return The largest duration counted in bucket.
+     */
+    private static long highestOf(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        } // end if (bucket < LINEAR)
+        
+        int  exponent = (bucket - LINEAR) / SUB + 4;
+        long sub      = (bucket - LINEAR) % SUB;
+        long width    = 1L << (exponent - SUBBITS);
+        
+        return ((SUB + sub) << (exponent - SUBBITS)) + width - 1;
+    } // end highestOf(int)
+} // end class LatencyHistogram
@@ -0,0 +1,632 @@
+/*
+ * @file    LirsPolicy.java
+ * @brief   This class is the low inter-reference recency set (LIRS) policy
+ *           of Jiang and Zhang. Blocks whose last two accesses were close
+ *           together are LIR blocks and take almost all slots; the remaining
+ *           few slots hold HIR blocks, which are the only candidates for
+ *           replacement. The recency stack S orders recently seen blocks,
+ *           including some no longer resident, and the queue Q orders resident
+ *           HIR blocks for eviction. A HIR block that is accessed again while
+ *           it is still in S has a shorter reuse distance than the least
+ *           recent LIR block, so the two swap status. One-time blocks stay HIR
+ *           and cannot push the hot set out. Each tracked block is an entry
+ *           of parallel int arrays, linked into S and Q by entry number and
+ *           found through a BlockIndex, so tracking and forgetting blocks
+ *           creates no objects.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class LirsPolicy implements ReplacementPolicy {
+    private final static int NONE = -1;     // no entry, slot or neighbour
+    private int              lirLimit;      // slots for LIR blocks
+    private int              lirCount;      // LIR blocks resident
+    private int              history;       // most blocks ever tracked
+    private int[]            slotEntry;     // entry of the block held by each
+                                            //  slot, or NONE
+    private BlockIndex       entries;       // block ID of every block in S or
+                                            //  Q to its entry
+    private int              tracked;       // entries in use
+    private int              free;          // first unused entry, chained
+                                            //  through down
+    private int[]            blockOf;       // block ID of each entry
+    private int[]            slotOf;        // slot holding each entry; NONE
+                                            //  if not resident
+    private SlotBits         lir;           // entries with LIR status
+    private SlotBits         inStack;       // entries in S
+    private SlotBits         inQueue;       // entries in Q
+    private int[]            up;            // more recent neighbour in S
+    private int[]            down;          // less recent neighbour in S
+    private int[]            ahead;         // older neighbour in Q
+    private int[]            behind;        // newer neighbour in Q
+    private int              top;           // most recent entry of S
+    private int              bottom;        // least recent entry of S
+    private int              front;         // next HIR entry to evict
+    private int              back;          // newest HIR entry in Q
+    private int[]            evictedNext;   // block below each victim in S,
+                                            //  or ahead of it in Q, when it
+                                            //  was evicted, or NONE
+    private SlotBits         evictedLir;    // victims that were LIR
+    
+    
+    /**
+     * Initializes this LirsPolicy for a given number of slots. About one
+     *  percent of the slots, and at least one, are kept for HIR blocks; block
+     *  IDs are remembered for up to twice as many non-resident blocks as there
+     *  are slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   No slot is resident; no history is remembered.
+     */
+    public LirsPolicy(int slots) {
+        lirLimit    = slots - Math.max(1, slots / 100);
+        lirCount    = 0;
+        history     = 3 * slots;
+        slotEntry   = new int[slots];
+        entries     = new BlockIndex(history + 1);
+        tracked     = 0;
+        free        = NONE;
+        blockOf     = new int[0];
+        slotOf      = new int[0];
+        lir         = new SlotBits(1);
+        inStack     = new SlotBits(1);
+        inQueue     = new SlotBits(1);
+        up          = new int[0];
+        down        = new int[0];
+        ahead       = new int[0];
+        behind      = new int[0];
+        top         = NONE;
+        bottom      = NONE;
+        front       = NONE;
+        back        = NONE;
+        evictedNext = new int[slots];
+        evictedLir  = new SlotBits(slots);
+        java.util.Arrays.fill(slotEntry, NONE);
+        grow(history + 1);
+    } // end constructor
+    
+    
+    /**
+     * Moves the block to the top of S. A HIR block still in S becomes LIR,
+     *  and the least recent LIR block becomes HIR in its place.
+     * @see    ReplacementPolicy#hit(int)
+     */
+    public void hit(int slot) {
+        int entry = slotEntry[slot];
+        
+        prune();
+        
+        if (lir.get(entry)) {
+            stackPush(entry);
+            prune();
+        } // end if (lir.get(entry))
+        else if (inStack.get(entry)) {
+            queueRemove(entry);
+            stackPush(entry);
+            promote(entry);
+        } // end else if (inStack.get(entry))
+        else {
+            stackPush(entry);
+            queuePush(entry);
+        } // end else (HIR and not in S)
+    } // end hit(int)
+    
+    
+    /**
+     * Makes the new block LIR while LIR slots remain, or if it was still in S
+     *  when it missed; otherwise, makes it a resident HIR block.
+     * @see    ReplacementPolicy#fill(int, int)
+     */
+    public void fill(int slot, int blockId) {
+        int entry;
+        
+        prune();
+        entry = entries.get(blockId);
+        
+        if (entry == NONE) {
+            entry = track(blockId);
+        } // end if (entry == NONE)
+        
+        slotOf[entry]   = slot;
+        slotEntry[slot] = entry;
+        
+        if (lirCount < lirLimit) {
+            stackPush(entry);
+            lir.set(entry);
+            ++lirCount;
+        } // end if (lirCount < lirLimit)
+        else if (inStack.get(entry)) {
+            stackPush(entry);
+            promote(entry);
+        } // end else if (inStack.get(entry))
+        else {
+            stackPush(entry);
+            queuePush(entry);
+        } // end else (HIR and not in S)
+        
+        if (tracked > history) {
+            trimHistory();
+        } // end if (tracked > history)
+    } // end fill(int, int)
+    
+    
+    /**
+     * Evicts the oldest evictable HIR block of Q. Its block ID stays in S, if
+     *  it is there, so that a quick return promotes it. Only if no HIR block
+     *  is evictable is the least recent evictable LIR block taken instead;
+     *  S is then pruned by the next call, not here, so that the eviction can
+     *  be taken back.
+     * @see    ReplacementPolicy#victim(int, ReplacementPolicy.Slots)
+     */
+    public int victim(int blockId, Slots slots) {
+        for (int entry = front; entry != NONE && !slots.exhausted();
+             entry = behind[entry]) {
+            if (slots.evictable(slotOf[entry])) {
+                int slot = slotOf[entry];
+                
+                evictedNext[slot] = blockAt(ahead[entry]);
+                evictedLir.clear(slot);
+                queueRemove(entry);
+                slotEntry[slot] = NONE;
+                slotOf[entry]   = NONE;
+                
+                if (!inStack.get(entry)) {
+                    release(entry);
+                } // end if (!inStack.get(entry))
+                
+                return slot;
+            } // end if (slots.evictable(slotOf[entry]))
+        } // end for (; entry != NONE && ...; )
+        
+        for (int entry = bottom; entry != NONE && !slots.exhausted();
+             entry = up[entry]) {
+            if (lir.get(entry) && slots.evictable(slotOf[entry])) {
+                int slot = slotOf[entry];
+                
+                evictedNext[slot] = blockAt(down[entry]);
+                evictedLir.set(slot);
+                forget(entry);
+                return slot;
+            } // end if (lir.get(entry) && ...)
+        } // end for (; entry != NONE && ...; )
+        
+        return NONE;
+    } // end victim(int, Slots)
+    
+    
+    /**
+     * Tracks the block again if its eviction forgot it, and puts it back
+     *  where it was: a HIR victim into Q behind the block that was ahead of
+     *  it, and a LIR victim into S above the block that was below it, or at
+     *  the eviction end of Q or the bottom of S if that block has gone
+     *  since. A LIR victim gets its LIR status back, and if that leaves too
+     *  many LIR blocks, the least recent is demoted as by promote().
+     * @see    ReplacementPolicy#restore(int, int)
+     */
+    public void restore(int slot, int blockId) {
+        int entry = entries.get(blockId);
+        int next  = entries.get(evictedNext[slot]);
+        
+        if (entry == NONE) {
+            entry = track(blockId);
+        } // end if (entry == NONE)
+        
+        slotOf[entry]   = slot;
+        slotEntry[slot] = entry;
+        
+        if (evictedLir.get(slot)) {
+            lir.set(entry);
+            ++lirCount;
+            stackInsert(entry, (next != NONE && inStack.get(next)) ? next
+                                                                   : NONE);
+            
+            while (lirCount > lirLimit) {
+                int demoted;
+                
+                prune();
+                demoted = bottom;
+                
+                if (demoted == entry) {
+                    break;
+                } // end if (demoted == entry)
+                
+                lir.clear(demoted);
+                --lirCount;
+                stackRemove(demoted);
+                queuePush(demoted);
+            } // end while (lirCount > lirLimit)
+        } // end if (evictedLir.get(slot))
+        else {
+            queueInsert(entry, (next != NONE && inQueue.get(next)) ? next
+                                                                   : NONE);
+        } // end else (!evictedLir.get(slot))
+        
+        if (tracked > history) {
+            trimHistory();
+        } // end if (tracked > history)
+    } // end restore(int, int)
+    
+    
+    /**
+     * @see    ReplacementPolicy#remove(int)
+     */
+    public void remove(int slot) {
+        if (slotEntry[slot] != NONE) {
+            forget(slotEntry[slot]);
+            prune();
+        } // end if (slotEntry[slot] != NONE)
+    } // end remove(int)
+    
+    
+    /**
+     * Recomputes the LIR limit and the history bound for the new number of
+     *  slots. If there are now too many LIR blocks, the least recent ones are
+     *  demoted to resident HIR blocks at the back of Q.
+     * @see    ReplacementPolicy#resize(int)
+     */
+    public void resize(int slots) {
+        int count = slotEntry.length;
+        
+        prune();
+        lirLimit    = slots - Math.max(1, slots / 100);
+        history     = 3 * slots;
+        slotEntry   = java.util.Arrays.copyOf(slotEntry, slots);
+        evictedNext = java.util.Arrays.copyOf(evictedNext, slots);
+        evictedLir.resize(slots);
+        
+        for (int i = count; i < slots; ++i) {
+            slotEntry[i] = NONE;
+        } // end for (; i < slots; )
+        
+        while (lirCount > lirLimit && bottom != NONE) {
+            int demoted = bottom;
+            
+            lir.clear(demoted);
+            --lirCount;
+            stackRemove(demoted);
+            queuePush(demoted);
+            prune();
+        } // end while (lirCount > lirLimit && bottom != NONE)
+        
+        if (tracked > history) {
+            trimHistory();
+        } // end if (tracked > history)
+    } // end resize(int)
+    
+    
+    /**
+     * Gives LIR status to a HIR block that was found in S, and takes it from
+     *  the least recent LIR block, which moves to the back of Q.
+     * @param  entry  A block that has just been pushed onto S.
+     * @pre    entry is HIR, resident and at the top of S.
+     * @post   entry is LIR; the LIR count is unchanged unless it was below
+     *          its limit.
+     */
+    private void promote(int entry) {
+        lir.set(entry);
+        ++lirCount;
+        
+        if (lirCount > lirLimit && bottom != NONE && lir.get(bottom) &&
+            bottom != entry) {
+            int demoted = bottom;
+            
+            lir.clear(demoted);
+            --lirCount;
+            stackRemove(demoted);
+            queuePush(demoted);
+        } // end if (lirCount > lirLimit && ...)
+        
+        prune();
+    } // end promote(int)
+    
+    
+    /**
+     * Removes HIR blocks from the bottom of S until a LIR block is there.
+     *  Non-resident blocks removed from S are forgotten entirely.
+     * @pre    None.
+     * @post   S is empty or its bottom block is LIR.
+     */
+    private void prune() {
+        while (bottom != NONE && !lir.get(bottom)) {
+            int entry = bottom;
+            
+            stackRemove(entry);
+            
+            if (slotOf[entry] == NONE) {
+                release(entry);
+            } // end if (slotOf[entry] == NONE)
+        } // end while (bottom != NONE && ...)
+    } // end prune()
+    
+    
+    /**
+     * Forgets the least recent non-resident blocks in S until the number of
+     *  tracked blocks is back within its limit.
+     * @pre    None.
+     * @post   At most history blocks are tracked, unless every tracked block
+     *          is resident.
+     */
+    private void trimHistory() {
+        int entry = bottom;
+        
+        while (entry != NONE && tracked > history) {
+            int above = up[entry];
+            
+            if (slotOf[entry] == NONE) {
+                stackRemove(entry);
+                release(entry);
+            } // end if (slotOf[entry] == NONE)
+            
+            entry = above;
+        } // end while (entry != NONE && tracked > history)
+    } // end trimHistory()
+    
+    
+    /**
+     * Drops a resident block from every structure of this policy.
+     * @param  entry  A resident block.
+     * @pre    slotOf[entry] != NONE.
+     * @post   entry is untracked; its slot is empty.
+     */
+    private void forget(int entry) {
+        if (lir.get(entry)) {
+            --lirCount;
+        } // end if (lir.get(entry))
+        
+        slotEntry[slotOf[entry]] = NONE;
+        stackRemove(entry);
+        queueRemove(entry);
+        release(entry);
+    } // end forget(int)
+    
+    
+    /**
+     * Starts tracking a block in an unused entry, growing the tables if none
+     *  is left.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    blockId is not tracked.
+     * @post   blockId is tracked, HIR, not resident and in neither S nor Q.
+     * @return The entry of blockId.
+     */
+    private int track(int blockId) {
+        int entry;
+        
+        if (free == NONE) {
+            grow(2 * blockOf.length);
+        } // end if (free == NONE)
+        
+        entry          = free;
+        free           = down[entry];
+        blockOf[entry] = blockId;
+        slotOf[entry]  = NONE;
+        up[entry]      = NONE;
+        down[entry]    = NONE;
+        ahead[entry]   = NONE;
+        behind[entry]  = NONE;
+        entries.put(blockId, entry);
+        ++tracked;
+        return entry;
+    } // end track(int)
+    
+    
+    /**
+     * Stops tracking a block and returns its entry to the free list.
+     * @param  entry  A tracked block in neither S nor Q.
+     * @pre    entry is in neither S nor Q.
+     * @post   entry is unused.
+     */
+    private void release(int entry) {
+        entries.remove(blockOf[entry]);
+        lir.clear(entry);
+        down[entry] = free;
+        free        = entry;
+        --tracked;
+    } // end release(int)
+    
+    
+    /**
+     * Lengthens the entry tables, adding the new entries to the free list.
+     * @param  capacity  New number of entries.
+     * @pre    capacity > number of entries.
+     * @post   Entries up to capacity may be used.
+     */
+    private void grow(int capacity) {
+        int count = blockOf.length;
+        
+        blockOf = java.util.Arrays.copyOf(blockOf, capacity);
+        slotOf  = java.util.Arrays.copyOf(slotOf, capacity);
+        up      = java.util.Arrays.copyOf(up, capacity);
+        down    = java.util.Arrays.copyOf(down, capacity);
+        ahead   = java.util.Arrays.copyOf(ahead, capacity);
+        behind  = java.util.Arrays.copyOf(behind, capacity);
+        lir.resize(capacity);
+        inStack.resize(capacity);
+        inQueue.resize(capacity);
+        
+        for (int i = capacity - 1; i >= count; --i) {
+            down[i] = free;
+            free    = i;
+        } // end for (; i >= count; )
+    } // end grow(int)
+    
+    
+    /**
+     * Reports the block of an entry.
+     * @param  entry  A tracked entry, or NONE.
+     * @pre    None.
+     * @post   This LirsPolicy is unchanged.
+     * @return The block ID of entry; NONE if entry is NONE.
+     */
+    private int blockAt(int entry) {
+        return (entry == NONE) ? NONE : blockOf[entry];
+    } // end blockAt(int)
+    
+    
+    /**
+     * Moves or inserts a block at the top of S.
+     * @param  entry  The block to push.
+     * @pre    None.
+     * @post   entry is at the top of S.
+     */
+    private void stackPush(int entry) {
+        stackRemove(entry);
+        up[entry]   = NONE;
+        down[entry] = top;
+        inStack.set(entry);
+        
+        if (top != NONE) {
+            up[top] = entry;
+        } // end if (top != NONE)
+        else {
+            bottom = entry;
+        } // end else (top == NONE)
+        
+        top = entry;
+    } // end stackPush(int)
+    
+    
+    /**
+     * Inserts a block into S just above another, or at the bottom.
+     * @param  entry  The block to insert.
+     * @param  below  The block of S to insert entry above; NONE for the
+     *                 bottom.
+     * @pre    entry is not in S; below is NONE or in S.
+     * @post   entry is in S, next to below or at the bottom.
+     */
+    private void stackInsert(int entry, int below) {
+        int above = (below == NONE) ? bottom : up[below];
+        
+        up[entry]   = above;
+        down[entry] = below;
+        inStack.set(entry);
+        
+        if (above != NONE) {
+            down[above] = entry;
+        } // end if (above != NONE)
+        else {
+            top = entry;
+        } // end else (above == NONE)
+        
+        if (below != NONE) {
+            up[below] = entry;
+        } // end if (below != NONE)
+        else {
+            bottom = entry;
+        } // end else (below == NONE)
+    } // end stackInsert(int, int)
+    
+    
+    /**
+     * Unlinks a block from S if it is there.
+     * @param  entry  The block to unlink.
+     * @pre    None.
+     * @post   entry is not in S.
+     */
+    private void stackRemove(int entry) {
+        if (!inStack.get(entry)) {
+            return;
+        } // end if (!inStack.get(entry))
+        
+        if (up[entry] != NONE) {
+            down[up[entry]] = down[entry];
+        } // end if (up[entry] != NONE)
+        else {
+            top = down[entry];
+        } // end else (up[entry] == NONE)
+        
+        if (down[entry] != NONE) {
+            up[down[entry]] = up[entry];
+        } // end if (down[entry] != NONE)
+        else {
+            bottom = up[entry];
+        } // end else (down[entry] == NONE)
+        
+        up[entry]   = NONE;
+        down[entry] = NONE;
+        inStack.clear(entry);
+    } // end stackRemove(int)
+    
+    
+    /**
+     * Moves or inserts a block at the back of Q.
+     * @param  entry  The block to queue.
+     * @pre    entry is resident and HIR.
+     * @post   entry is at the back of Q.
+     */
+    private void queuePush(int entry) {
+        queueRemove(entry);
+        ahead[entry]  = back;
+        behind[entry] = NONE;
+        inQueue.set(entry);
+        
+        if (back != NONE) {
+            behind[back] = entry;
+        } // end if (back != NONE)
+        else {
+            front = entry;
+        } // end else (back == NONE)
+        
+        back = entry;
+    } // end queuePush(int)
+    
+    
+    /**
+     * Inserts a block into Q just behind another, or at the front.
+     * @param  entry  The block to insert.
+     * @param  older  The block of Q to insert entry behind; NONE for the
+     *                 front.
+     * @pre    entry is resident, HIR and not in Q; older is NONE or in Q.
+     * @post   entry is in Q, next to older or at the front.
+     */
+    private void queueInsert(int entry, int older) {
+        int newer = (older == NONE) ? front : behind[older];
+        
+        ahead[entry]  = older;
+        behind[entry] = newer;
+        inQueue.set(entry);
+        
+        if (newer != NONE) {
+            ahead[newer] = entry;
+        } // end if (newer != NONE)
+        else {
+            back = entry;
+        } // end else (newer == NONE)
+        
+        if (older != NONE) {
+            behind[older] = entry;
+        } // end if (older != NONE)
+        else {
+            front = entry;
+        } // end else (older == NONE)
+    } // end queueInsert(int, int)
+    
+    
+    /**
+     * Unlinks a block from Q if it is there.
+     * @param  entry  The block to unlink.
+     * @pre    None.
+     * @post   entry is not in Q.
+     */
+    private void queueRemove(int entry) {
+        if (!inQueue.get(entry)) {
+            return;
+        } // end if (!inQueue.get(entry))
+        
+        if (ahead[entry] != NONE) {
+            behind[ahead[entry]] = behind[entry];
+        } // end if (ahead[entry] != NONE)
+        else {
+            front = behind[entry];
+        } // end else (ahead[entry] == NONE)
+        
+        if (behind[entry] != NONE) {
+            ahead[behind[entry]] = ahead[entry];
+        } // end if (behind[entry] != NONE)
+        else {
+            back = ahead[entry];
+        } // end else (behind[entry] == NONE)
+        
+        ahead[entry]  = NONE;
+        behind[entry] = NONE;
+        inQueue.clear(entry);
+    } // end queueRemove(int)
+} // end class LirsPolicy
@@ -0,0 +1,204 @@
+/*
+ * @file    MappedDisk.java
+ * @brief   This class is a hard disk backed directly by the disk image file,
+ *           mapped into memory with FileChannel.map(), for use in place of
+ *           the simulated Disk. The simulated Disk reads the whole image into
+ *           an array when it is built and writes the whole array back on
+ *           every sync, so booting and syncing cost time in proportion to the
+ *           size of the disk. Here, nothing is read at boot; the operating
+ *           system pages blocks of the image in as they are first used.
+ *           Reads and writes are copies to and from the mapping, served at
+ *           once in the calling thread, with no seek delay and no interrupt.
+ *           The blocks written since the last sync are tracked, one bit per
+ *           block, and a sync forces only the runs of those blocks to the
+ *           file. The image has the same layout as that of the simulated
+ *           Disk, so either may be used on the same file. It is mapped in
+ *           regions of up to a gigabyte of whole blocks, as a single mapping
+ *           is limited to 2 GB.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+public class MappedDisk {
+    private final static int REGION_BYTES = 1 << 30;    // largest region
+    private int              blockSize;     // bytes per block
+    private int              diskBlocks;    // number of blocks on the disk
+    private int              regionBlocks;  // blocks per region
+    private MappedByteBuffer[] regions;     // the mapped image, in order
+    private SlotBits         dirty;         // blocks written since the last
+                                            //  sync
+    
+    
+    /**
+     * Initializes a MappedDisk over an image file. The file is created if
+     *  it does not exist, and grown with zeroes if it is too short for the
+     *  disk; none of it is read.
+     * @param  path  Name of the image file on the host.
+     * @param  diskBlocks  Number of blocks on the disk.
+     * @param  blockSize  Bytes per block.
+     * @pre    path is not null; diskBlocks > 0; blockSize > 0.
+     * @post   The image is mapped; no block is dirty.
+     * @throws IOException if the file cannot be opened, grown or mapped.
+     */
+    public MappedDisk(String path, int diskBlocks, int blockSize)
+        throws IOException {
+        long bytes = (long)diskBlocks * blockSize;
+        
+        this.blockSize  = blockSize;
+        this.diskBlocks = diskBlocks;
+        regionBlocks    = Math.max(1, REGION_BYTES / blockSize);
+        regions         = new MappedByteBuffer[(diskBlocks + regionBlocks -
+                                                1) / regionBlocks];
+        dirty           = new SlotBits(diskBlocks);
+        
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            FileChannel channel = file.getChannel();
+            
+            if (file.length() < bytes) {
+                file.setLength(bytes);
+            } // end if (file.length() < bytes)
+            
+            for (int i = 0; i < regions.length; ++i) {
+                long start = (long)i * regionBlocks * blockSize;
+                
+                regions[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                         start,
+                                         Math.min(bytes - start,
+                                                  (long)regionBlocks *
+                                                  blockSize));
+            } // end for (; i < regions.length; )
+        } // end try (file)
+    } // end constructor
+    
+    
+    /**
+     * Serves a request at once, in the calling thread. A read or write of a
+     *  block that is not on the disk, or without a buffer of a whole block,
+     *  fails.
+     * @param  op  DiskRequest.READ, WRITE or SYNC.
+     * @param  blockId  The location of the block on the hard disk; ignored
+     *                   by SYNC.
+     * @param  buffer  The data of the block; ignored by SYNC.
+     * @pre    None.
+     * @post   The request is done.
+     * @return The request, on which await() returns at once.
+     */
+    public DiskRequest submit(int op, int blockId, byte buffer[]) {
+        DiskRequest request = new DiskRequest(op, blockId, buffer);
+        
+        request.start();
+        
+        if (op == DiskRequest.SYNC) {
+            long bytes = sync();
+            
+            request.finish(bytes >= 0, Math.max(0, bytes));
+        } // end if (op == DiskRequest.SYNC)
+        else if (blockId < 0 || blockId >= diskBlocks || buffer == null ||
+                 buffer.length < blockSize) {
+            request.finish(false);
+        } // end else if (blockId < 0 || ...)
+        else if (op == DiskRequest.READ) {
+            regions[blockId / regionBlocks].get(offsetOf(blockId), buffer, 0,
+                                                blockSize);
+            request.finish(true);
+        } // end else if (op == DiskRequest.READ)
+        else {
+            regions[blockId / regionBlocks].put(offsetOf(blockId), buffer, 0,
+                                                blockSize);
+            markDirty(blockId);
+            request.finish(true);
+        } // end else (op == DiskRequest.WRITE)
+        
+        return request;
+    } // end submit(int, int, byte[])
+    
+    
+    /**
+     * Forces the blocks written since the last sync to the image file. Each
+     *  run of consecutive dirty blocks within a region is forced with one
+     *  call. The dirty bits are cleared before forcing, so a block written
+     *  during the sync is forced again by the next one.
+     * @pre    None.
+     * @post   Every block written before this call is in the image file, or
+     *          is still dirty if forcing failed.
+     * @return The number of bytes forced; -1 if forcing failed.
+     */
+    public long sync() {
+        long[] words;
+        int    first = -1;      // first block of the current run
+        long   bytes = 0;
+        
+        synchronized (dirty) {
+            words = new long[dirty.words()];
+            
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = dirty.word(i);
+                dirty.clear(i, words[i]);
+            } // end for (; i < words.length; )
+        } // end synchronized (dirty)
+        
+        try {
+            for (int blockId = 0; blockId <= diskBlocks; ++blockId) {
+                boolean isDirty = blockId < diskBlocks &&
+                                  (words[blockId >>> 6] &
+                                   (1L << blockId)) != 0;
+                
+                if (first != -1 &&
+                    (!isDirty || blockId % regionBlocks == 0)) {
+                    regions[first / regionBlocks].force(
+                        offsetOf(first), (blockId - first) * blockSize);
+                    bytes += (long)(blockId - first) * blockSize;
+                    first  = -1;
+                } // end if (first != -1 && ...)
+                
+                if (isDirty && first == -1) {
+                    first = blockId;
+                } // end if (isDirty && first == -1)
+            } // end for (; blockId <= diskBlocks; )
+        } catch (UncheckedIOException e) {
+            synchronized (dirty) {
+                for (int blockId = 0; blockId < diskBlocks; ++blockId) {
+                    if ((words[blockId >>> 6] & (1L << blockId)) != 0) {
+                        dirty.set(blockId);     // still to be forced
+                    } // end if ((words[blockId >>> 6] & ...) != 0)
+                } // end for (; blockId < diskBlocks; )
+            } // end synchronized (dirty)
+            
+            return -1;
+        } // end try regions[...].force(...)
+        
+        return bytes;
+    } // end sync()
+    
+    
+    /**
+     * Records that a block has been written since the last sync.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    0 <= blockId < diskBlocks.
+     * @post   blockId is dirty.
+     */
+    private void markDirty(int blockId) {
+        synchronized (dirty) {
+            dirty.set(blockId);
+        } // end synchronized (dirty)
+    } // end markDirty(int)
+    
+    
+    /**
+     * Locates a block within its region.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    0 <= blockId < diskBlocks.
+     * @post   This MappedDisk is unchanged.
+     * @return The offset, in bytes, of the first byte of blockId in its
+     *          region.
+     */
+    private int offsetOf(int blockId) {
+        return (blockId % regionBlocks) * blockSize;
+    } // end offsetOf(int)
+} // end class MappedDisk
@@ -0,0 +1,414 @@
+/*
+ * @file    PolicyTest.java
+ * @brief   This class is a test case for the replacement policies. For
+ *           each policy, random histories of hits, fills and evictions are
+ *           played with some slots busy, and every victim picked must be a
+ *           resident slot that may be replaced. A hot set of half as many
+ *           blocks as there are slots is then read half of the time, with
+ *           blocks read only once in between, as in Test4.mixedAccess; ARC,
+ *           2Q and LIRS must keep the hot set resident through the blocks
+ *           read once, which clock is not expected to. Last, every policy
+ *           must take back an eviction exactly. The cache does so when its
+ *           admission filter turns a block away and when the write-back of a
+ *           dirty victim fails. Two instances are given the same random
+ *           history; one of them then picks a victim and restores it. Both
+ *           are then driven through the same further accesses, and the
+ *           victims they pick must be the same, as they would not be if the
+ *           restore had been counted as an access or had lost any history.
+ *           The share of hot reads that hit, and the first check that
+ *           failed, if any, are printed to standard out for each policy.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+
+public class PolicyTest extends Thread {
+    private final static int SLOTS = 64,    // slots under each policy
+                             RANGE = 256,   // block IDs in the history
+                             STEPS = 2000,  // accesses of the history
+                             CASES = 200,   // histories per policy
+                             AFTER = 1000,  // block IDs filled after restore
+                             HOT   = 32,    // blocks read over and over
+                             READS = 20000, // reads of the mixed access
+                             KEPT  = 90;    // least % of hot reads to hit
+    private final static int[]    POLICY = { ReplacementPolicy.CLOCK,
+                                             ReplacementPolicy.ARC,
+                                             ReplacementPolicy.TWO_Q,
+                                             ReplacementPolicy.LIRS };
+    private final static String[] NAME   = { "clock", "ARC", "2Q", "LIRS" };
+    
+    
+    /*
+    * @brief   This class answers whether a slot may be replaced from a fixed
+    *           set of flags, as a cache segment would from its busy and pinned
+    *           slots.
+    */
+    private static class FixedSlots implements ReplacementPolicy.Slots {
+        private boolean[] evictable;    // whether each slot may be replaced
+        
+        
+        /**
+         * Initializes the flags of a given number of slots, each evictable
+         *  with a given chance.
+         * @param  random  Source of the flags.
+         * @param  slots  Number of slots.
+         * @param  busy  One in busy slots is not evictable; 0 for none.
+         * @pre    random is not null; slots > 0.
+         * @post   The flags are set.
+         */
+        public FixedSlots(Random random, int slots, int busy) {
+            evictable = new boolean[slots];
+            
+            for (int i = 0; i < slots; ++i) {
+                evictable[i] = busy == 0 || random.nextInt(busy) != 0;
+            } // end for (; i < slots; )
+        } // end constructor
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#evictable(int)
+         */
+        public boolean evictable(int slot) {
+            return evictable[slot];
+        } // end evictable(int)
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#evictableWord(int)
+         */
+        public long evictableWord(int word) {
+            long mask = 0;
+            
+            for (int i = 0; i < 64 && (word << 6) + i < evictable.length;
+                 ++i) {
+                if (evictable[(word << 6) + i]) {
+                    mask |= 1L << i;
+                } // end if (evictable[...])
+            } // end for (; i < 64 && ...; )
+            
+            return mask;
+        } // end evictableWord(int)
+        
+        
+        /**
+         * @see    ReplacementPolicy.Slots#exhausted()
+         */
+        public boolean exhausted() {
+            return false;
+        } // end exhausted()
+    } // end class FixedSlots
+    
+    
+    /**
+     * Initializes the test; it takes no arguments.
+     * @param  args  Ignored.
+     * @pre    None.
+     * @post   The test is ready to be run.
+     */
+    public PolicyTest(String[] args) {
+    } // end constructor
+    
+    
+    /**
+     * Checks every policy in turn.
+     * @pre    None.
+     * @post   One line per policy is printed to standard out.
+     */
+    @Override
+    public void run() {
+        for (int p = 0; p < POLICY.length; ++p) {
+            String result = "ok";
+            int    kept   = hotHits(POLICY[p]);
+            
+            for (int c = 0; c < CASES && result.equals("ok"); ++c) {
+                if (!picksValid(POLICY[p], c)) {
+                    result = "FAILED victim at case " + c;
+                } // end if (!picksValid(...))
+                else if (!restoresExactly(POLICY[p], c)) {
+                    result = "FAILED restore at case " + c;
+                } // end else if (!restoresExactly(...))
+            } // end for (; c < CASES && ...; )
+            
+            if (result.equals("ok") &&
+                POLICY[p] != ReplacementPolicy.CLOCK && kept < KEPT) {
+                result = "FAILED to keep the hot set";
+            } // end if (result.equals("ok") && ...)
+            
+            SysLib.cout("  " + NAME[p] + ": " + result + ", " + kept +
+                        "% hot hits\n");
+        } // end for (; p < POLICY.length; )
+        
+        SysLib.exit();
+    } // end run()
+    
+    
+    /**
+     * Checks the victims of a policy after a random history: each must be a
+     *  resident slot that may be replaced, while some slots are busy, and no
+     *  victim may be found only if there is no such slot. As in the cache, a
+     *  victim is only asked for when no slot is empty, and the block a slot
+     *  was emptied for is not always filled, as when its read fails.
+     * @param  type  The policy under test, such as ReplacementPolicy.ARC.
+     * @param  seed  Selects the history.
+     * @pre    type is a policy constant.
+     * @post   None.
+     * @return true if every victim was valid; false, otherwise.
+     */
+    private boolean picksValid(int type, int seed) {
+        Random            random   = new Random(seed);
+        ReplacementPolicy policy   = make(type);
+        boolean[]         resident = new boolean[SLOTS];
+        
+        history(random, policy, make(type));
+        Arrays.fill(resident, true);
+        
+        for (int i = 0; i < AFTER; ++i) {
+            FixedSlots slots = new FixedSlots(random, SLOTS, 4);
+            int        slot  = -1;
+            
+            for (int j = 0; j < SLOTS && slot < 0; ++j) {
+                slot = resident[j] ? -1 : j;
+            } // end for (; j < SLOTS && slot < 0; )
+            
+            if (slot < 0) {
+                slot = policy.victim(2 * RANGE + 1 + i, slots);
+                
+                if (slot < 0 ? replaceable(resident, slots)
+                             : !resident[slot] || !slots.evictable(slot)) {
+                    return false;
+                } // end if (slot < 0 ? ... : ...)
+            } // end if (slot < 0)
+            
+            if (slot >= 0) {
+                resident[slot] = false;
+                
+                if (random.nextInt(4) != 0) {
+                    policy.fill(slot, 2 * RANGE + 1 + i);
+                    resident[slot] = true;
+                } // end if (random.nextInt(4) != 0)
+            } // end if (slot >= 0)
+            
+            slot = random.nextInt(SLOTS);
+            
+            if (resident[slot]) {
+                policy.hit(slot);
+            } // end if (resident[slot])
+        } // end for (; i < AFTER; )
+        
+        return true;
+    } // end picksValid(int, int)
+    
+    
+    /**
+     * Checks whether any resident slot may be replaced.
+     * @param  resident  Whether each slot is resident in the policy.
+     * @param  slots  Whether each slot may be replaced.
+     * @pre    resident has SLOTS elements.
+     * @post   None.
+     * @return true if some slot is both resident and evictable; false,
+     *          otherwise.
+     */
+    private static boolean replaceable(boolean resident[], FixedSlots slots) {
+        for (int i = 0; i < SLOTS; ++i) {
+            if (resident[i] && slots.evictable(i)) {
+                return true;
+            } // end if (resident[i] && slots.evictable(i))
+        } // end for (; i < SLOTS; )
+        
+        return false;
+    } // end replaceable(boolean[], FixedSlots)
+    
+    
+    /**
+     * Plays a mixed access under a policy: half of the reads are of a hot
+     *  set of HOT blocks, and the others are of blocks read only once.
+     * @param  type  The policy under test, such as ReplacementPolicy.ARC.
+     * @pre    type is a policy constant.
+     * @post   None.
+     * @return The percentage of hot reads that hit, once every slot is full.
+     */
+    private int hotHits(int type) {
+        Random                    random = new Random(type);
+        ReplacementPolicy         policy = make(type);
+        HashMap<Integer, Integer> index  = new HashMap<Integer, Integer>();
+        int[]                     frame  = new int[SLOTS];
+        int                       used   = 0;
+        int                       once   = RANGE;   // next block read once
+        int                       hot    = 0;       // hot reads counted
+        int                       hits   = 0;       // of which hit
+        
+        for (int i = 0; i < READS; ++i) {
+            boolean isHot   = random.nextBoolean();
+            int     blockId = isHot ? random.nextInt(HOT) : once++;
+            Integer slot    = index.get(blockId);
+            
+            if (isHot && used == SLOTS) {
+                ++hot;
+                hits += (slot != null) ? 1 : 0;
+            } // end if (isHot && used == SLOTS)
+            
+            if (slot != null) {
+                policy.hit(slot);
+                continue;
+            } // end if (slot != null)
+            
+            if (used < SLOTS) {
+                slot = used++;
+            } // end if (used < SLOTS)
+            else {
+                slot = policy.victim(blockId,
+                                     new FixedSlots(random, SLOTS, 0));
+                index.remove(frame[slot]);
+            } // end else (used == SLOTS)
+            
+            frame[slot] = blockId;
+            index.put(blockId, slot);
+            policy.fill(slot, blockId);
+        } // end for (; i < READS; )
+        
+        return 100 * hits / Math.max(1, hot);
+    } // end hotHits(int)
+    
+    
+    /**
+     * Checks one restore: two instances of a policy share a random history,
+     *  one evicts and restores a slot, and both must then pick the same
+     *  victims.
+     * @param  type  The policy under test, such as ReplacementPolicy.ARC.
+     * @param  seed  Selects the history.
+     * @pre    type is a policy constant.
+     * @post   None.
+     * @return true if the restore left no trace; false, otherwise.
+     */
+    private boolean restoresExactly(int type, int seed) {
+        Random            random   = new Random(seed);
+        ReplacementPolicy restored = make(type);
+        ReplacementPolicy control  = make(type);
+        int[]             frame    = history(random, restored, control);
+        int               blockId  = random.nextInt(2 * RANGE);
+        int               slot;
+        
+        for (int i = 0; i < SLOTS; ++i) {
+            if (frame[i] == blockId) {
+                blockId = 2 * RANGE;        // must not be resident
+            } // end if (frame[i] == blockId)
+        } // end for (; i < SLOTS; )
+        
+        slot = restored.victim(blockId, new FixedSlots(random, SLOTS, 4));
+        
+        if (slot >= 0) {
+            restored.restore(slot, frame[slot]);
+        } // end if (slot >= 0)
+        
+        return victims(restored, seed).equals(victims(control, seed));
+    } // end restoresExactly(int, int)
+    
+    
+    /**
+     * Gives two instances of a policy the same random history of hits, fills
+     *  and evictions, skewed toward low block IDs, until every slot is full.
+     * @param  random  Source of the history.
+     * @param  first  One instance.
+     * @param  second  The other instance.
+     * @pre    Both instances are new and of the same policy.
+     * @post   Both instances have seen the same calls.
+     * @return The block ID held by each slot.
+     */
+    private int[] history(Random random, ReplacementPolicy first,
+                          ReplacementPolicy second) {
+        int[] frame = new int[SLOTS];
+        int   used  = 0;
+        
+        for (int step = 0; step < STEPS || used < SLOTS; ++step) {
+            int blockId = (int)Math.min(RANGE - 1,
+                                        Math.abs(random.nextGaussian()) *
+                                        RANGE / 3);
+            int slot    = -1;
+            
+            for (int i = 0; i < used && slot < 0; ++i) {
+                if (frame[i] == blockId) {
+                    slot = i;
+                } // end if (frame[i] == blockId)
+            } // end for (; i < used && slot < 0; )
+            
+            if (slot >= 0) {
+                first.hit(slot);
+                second.hit(slot);
+                continue;
+            } // end if (slot >= 0)
+            
+            if (used < SLOTS) {
+                slot = used++;
+            } // end if (used < SLOTS)
+            else {
+                FixedSlots slots = new FixedSlots(random, SLOTS, 8);
+                
+                slot = first.victim(blockId, slots);
+                
+                if (slot != second.victim(blockId, slots) || slot < 0) {
+                    continue;   // a mismatch shows up in the victims later
+                } // end if (slot != ... || slot < 0)
+            } // end else (used == SLOTS)
+            
+            frame[slot] = blockId;
+            first.fill(slot, blockId);
+            second.fill(slot, blockId);
+        } // end for (; step < STEPS || used < SLOTS; )
+        
+        return frame;
+    } // end history(Random, ...)
+    
+    
+    /**
+     * Drives a policy through a fixed run of new blocks and hits, recording
+     *  the victim picked for each new block.
+     * @param  policy  The policy under test, with every slot full.
+     * @param  seed  Selects the hits.
+     * @pre    policy is not null.
+     * @post   policy has evicted AFTER blocks.
+     * @return The victims, in order.
+     */
+    private String victims(ReplacementPolicy policy, int seed) {
+        Random        random = new Random(~seed);
+        StringBuilder picked = new StringBuilder();
+        
+        for (int i = 0; i < AFTER; ++i) {
+            int slot = policy.victim(2 * RANGE + 1 + i,
+                                     new FixedSlots(random, SLOTS, 0));
+            
+            picked.append(slot).append(' ');
+            
+            if (slot >= 0) {
+                policy.fill(slot, 2 * RANGE + 1 + i);
+            } // end if (slot >= 0)
+            
+            policy.hit(random.nextInt(SLOTS));
+        } // end for (; i < AFTER; )
+        
+        return picked.toString();
+    } // end victims(ReplacementPolicy, int)
+    
+    
+    /**
+     * Creates a policy of a given type.
+     * @param  type  A policy constant, such as ReplacementPolicy.ARC.
+     * @pre    None.
+     * @post   None.
+     * @return A new policy over SLOTS empty slots.
+     */
+    private static ReplacementPolicy make(int type) {
+        switch (type) {
+            case ReplacementPolicy.ARC:
+                return new ArcPolicy(SLOTS);
+            case ReplacementPolicy.TWO_Q:
+                return new TwoQueuePolicy(SLOTS);
+            case ReplacementPolicy.LIRS:
+                return new LirsPolicy(SLOTS);
+            default:
+                return new ClockPolicy(SLOTS);
+        } // end switch (type)
+    } // end make(int)
+} // end class PolicyTest
@@ -0,0 +1,267 @@
+/*
+ * @file    ReadAhead.java
+ * @brief   This class is a kernel daemon that reads blocks into a cache
+ *           before they are asked for. Every block read through the cache is
+ *           reported to it, and it keeps small tables of streams, each
+ *           remembering the block it expects to be read next. A read that
+ *           continues a stream is sequential: the window of the stream grows,
+ *           doubling from a minimum up to a maximum, and the blocks up to the
+ *           end of the window that were not requested yet are queued. A read
+ *           that continues no stream replaces the least recently used stream
+ *           of its table and starts it with no window. The queued blocks are
+ *           read into the cache by this thread, so the reading thread never
+ *           waits for them. The disk is divided into regions of consecutive
+ *           blocks, and each stream is kept in the table for the region of
+ *           the block it expects; each table has its own monitor. A read only
+ *           locks the table of its own block, so readers elsewhere on the disk
+ *           do not wait on each other, and a stream moves to the next table
+ *           as it crosses into the next region. The queue is guarded by the
+ *           monitor of this thread, taken only when blocks are queued.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class ReadAhead extends Thread {
+    private final static int STRIPES    = 4,    // tables of streams
+                             STREAMS    = 2,    // streams per table
+                             REGION     = 32,   // blocks per region
+                             QUEUE      = 256,  // blocks waiting to be read
+                             MIN_WINDOW = 2;    // first window of a stream
+    private Cache            cache;         // cache to read blocks into
+    private int              maxWindow;     // largest window of a stream
+    private int              diskBlocks;    // number of blocks on the disk
+    private Streams[]        stripes;       // streams by region of next block
+    private int[]            queue;         // blocks to read, circular
+    private int              head;          // next block to read
+    private int              size;          // number of blocks queued
+    
+    
+    /*
+    * @brief   This class is one table of streams. Its monitor guards its
+    *           fields.
+    */
+    private static class Streams {
+        public int[]  next;     // block each stream expects next, or -1
+        public int[]  window;   // read-ahead window of each stream
+        public int[]  ahead;    // first block not yet queued
+        public long[] used;     // last use of each stream
+        public long   clock;    // number of reads reported to this table
+        
+        
+        /**
+         * Initializes a table with no streams.
+         * @pre    None.
+         * @post   Every stream is unused.
+         */
+        public Streams() {
+            next   = new int[STREAMS];
+            window = new int[STREAMS];
+            ahead  = new int[STREAMS];
+            used   = new long[STREAMS];
+            clock  = 0;
+            
+            for (int i = 0; i < STREAMS; ++i) {
+                next[i] = -1;
+            } // end for (; i < STREAMS; )
+        } // end constructor
+        
+        
+        /**
+         * Finds the stream expecting a block.
+         * @param  blockId  The location of the block that was read.
+         * @pre    The calling thread holds the monitor of this table.
+         * @post   This table is unchanged.
+         * @return The stream expecting blockId; -1 if there is none.
+         */
+        public int find(int blockId) {
+            for (int i = 0; i < STREAMS; ++i) {
+                if (next[i] == blockId) {
+                    return i;
+                } // end if (next[i] == blockId)
+            } // end for (; i < STREAMS; )
+            
+            return -1;
+        } // end find(int)
+        
+        
+        /**
+         * Records the state of a stream, in place of the least recently used
+         *  stream if it is not yet in this table.
+         * @param  stream  The stream to update; -1 to add a stream.
+         * @param  expected  The block the stream expects next.
+         * @param  width  The window of the stream.
+         * @param  first  The first block of the stream not yet queued.
+         * @pre    The calling thread holds the monitor of this table.
+         * @post   The stream is the most recently used of this table.
+         */
+        public void put(int stream, int expected, int width, int first) {
+            if (stream == -1) {
+                stream = 0;
+                
+                for (int i = 1; i < STREAMS; ++i) {
+                    if (used[i] < used[stream]) {
+                        stream = i;
+                    } // end if (used[i] < used[stream])
+                } // end for (; i < STREAMS; )
+            } // end if (stream == -1)
+            
+            next[stream]   = expected;
+            window[stream] = width;
+            ahead[stream]  = first;
+            used[stream]   = ++clock;
+        } // end put(int, int, int, int)
+        
+        
+        /**
+         * Forgets a stream, so that it is the first to be replaced.
+         * @param  stream  A stream of this table.
+         * @pre    The calling thread holds the monitor of this table.
+         * @post   stream is unused.
+         */
+        public void drop(int stream) {
+            next[stream] = -1;
+            used[stream] = 0;
+        } // end drop(int)
+    } // end class Streams
+    
+    
+    /**
+     * Initializes a ReadAhead for a cache. The window of a stream never
+     *  exceeds a quarter of the slots of the cache, so that prefetching alone
+     *  cannot replace the whole cache. The thread is a daemon, so it does not
+     *  keep ThreadOS alive, and it must still be started.
+     * @param  cache  The cache to read blocks into.
+     * @param  maxWindow  Largest number of blocks to read ahead of a stream.
+     * @param  diskBlocks  Number of blocks on the hard disk; blocks past the
+     *                      end are never read.
+     * @pre    cache is not null; maxWindow > 0; diskBlocks > 0.
+     * @post   A ReadAhead with no streams is ready to be started.
+     */
+    public ReadAhead(Cache cache, int maxWindow, int diskBlocks) {
+        this.cache      = cache;
+        this.maxWindow  = Math.max(1, Math.min(maxWindow,
+                                               cache.capacity() / 4));
+        this.diskBlocks = diskBlocks;
+        stripes         = new Streams[STRIPES];
+        queue           = new int[QUEUE];
+        head            = 0;
+        size            = 0;
+        
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Streams();
+        } // end for (; i < STRIPES; )
+        
+        setDaemon(true);
+    } // end constructor
+    
+    
+    /**
+     * Reports a block that was read through the cache. If the read continues
+     *  a stream, the window of the stream grows and the blocks ahead of it
+     *  are queued; otherwise, a new stream is started at the block. Only the
+     *  table of the block is locked, and the table of the next block if it
+     *  lies in another region.
+     * @param  blockId  The location of the block that was read.
+     * @pre    blockId >= 0.
+     * @post   The stream tables are up to date; newly covered blocks are
+     *          queued as long as the queue has room.
+     */
+    public void access(int blockId) {
+        Streams from   = stripeOf(blockId);
+        Streams to     = stripeOf(blockId + 1);
+        int     stream;
+        int     width  = 0;             // window of the stream
+        int     first  = blockId + 1;
+        
+        synchronized (from) {
+            stream = from.find(blockId);
+            
+            if (stream != -1) {
+                width = from.window[stream] == 0
+                        ? Math.min(MIN_WINDOW, maxWindow)
+                        : Math.min(2 * from.window[stream], maxWindow);
+                first = enqueue(Math.max(from.ahead[stream], blockId + 1),
+                                Math.min(blockId + 1 + width, diskBlocks));
+            } // end if (stream != -1)
+            
+            if (from == to) {
+                from.put(stream, blockId + 1, width, first);
+                return;
+            } // end if (from == to)
+            
+            if (stream != -1) {
+                from.drop(stream);      // moves to the next region
+            } // end if (stream != -1)
+        } // end synchronized (from)
+        
+        synchronized (to) {
+            to.put(-1, blockId + 1, width, first);
+        } // end synchronized (to)
+    } // end access(int)
+    
+    
+    /**
+     * Reads queued blocks into the cache forever, waiting whenever the queue
+     *  is empty.
+     * @pre    None.
+     * @post   Does not return.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            int blockId;
+            
+            synchronized (this) {
+                while (size == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) { }
+                } // end while (size == 0)
+                
+                blockId = queue[head];
+                head    = (head + 1) % QUEUE;
+                --size;
+            } // end synchronized (this)
+            
+            cache.prefetch(blockId);
+        } // end while (true)
+    } // end run()
+    
+    
+    /**
+     * Queues a run of blocks for this thread to read, as far as the queue
+     *  has room. The monitor is only taken if there is a block to queue.
+     * @param  first  The first block of the run.
+     * @param  end  The block after the last block of the run.
+     * @pre    None.
+     * @post   Blocks from first up to the returned block are queued.
+     * @return The first block of the run that was not queued.
+     */
+    private int enqueue(int first, int end) {
+        if (first >= end) {
+            return first;
+        } // end if (first >= end)
+        
+        synchronized (this) {
+            while (first < end && size < QUEUE) {
+                queue[(head + size) % QUEUE] = first++;
+                ++size;
+            } // end while (first < end && size < QUEUE)
+            
+            notify();
+        } // end synchronized (this)
+        
+        return first;
+    } // end enqueue(int, int)
+    
+    
+    /**
+     * Selects the table of streams expecting a block.
+     * @param  blockId  The location of a block on the hard disk.
+     * @pre    blockId >= 0.
+     * @post   This ReadAhead is unchanged.
+     * @return The table for the region of blockId.
+     */
+    private Streams stripeOf(int blockId) {
+        return stripes[(blockId / REGION) % STRIPES];
+    } // end stripeOf(int)
+} // end class ReadAhead
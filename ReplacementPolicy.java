@@ -0,0 +1,134 @@
+/*
+ * @file    ReplacementPolicy.java
+ * @brief   This interface is the victim-selection strategy of one cache
+ *           segment. A policy tracks the resident slots of its segment by slot
+ *           index and is told about every hit, fill and removal; when the
+ *           segment has no empty slot left, the policy picks the slot whose
+ *           block is replaced next. Policies may also remember recently
+ *           evicted block IDs, so that blocks returning soon after eviction
+ *           can be treated as frequently used. All methods are called with the
+ *           monitor of the owning segment held, so implementations need no
+ *           locking of their own.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public interface ReplacementPolicy {
+    public final static int CLOCK = 0,  // second-chance (clock)
+                            ARC   = 1,  // adaptive replacement cache
+                            TWO_Q = 2,  // 2Q, with a ghost queue
+                            LIRS  = 3;  // low inter-reference recency set
+    
+    
+    /**
+     * This interface lets a policy ask its segment whether a resident slot
+     *  may be replaced right now. Slots with disk I/O in flight may not.
+     */
+    public interface Slots {
+        /**
+         * Checks whether a resident slot may be chosen as a victim.
+         * @param  slot  Index of a resident slot.
+         * @pre    The calling thread holds the monitor of the segment.
+         * @post   The segment is unchanged.
+         * @return true if slot may be replaced; false, otherwise.
+         */
+        public boolean evictable(int slot);
+        
+        
+        /**
+         * Checks which of 64 consecutive slots may be chosen as victims, so
+         *  that a policy keeping its own state in packed bits can test a
+         *  whole word of slots at once.
+         * @param  word  Index of the word; bit i stands for slot
+         *                64 * word + i.
+         * @pre    The calling thread holds the monitor of the segment;
+         *          0 <= 64 * word < number of slots.
+         * @post   The segment is unchanged.
+         * @return The bits of the slots of the word that may be replaced;
+         *          bits of empty slots and of slots past the end are
+         *          undefined.
+         */
+        public long evictableWord(int word);
+        
+        
+        /**
+         * Checks whether the current victim search has used up the probes
+         *  it may make, in which case no further slot may be chosen and the
+         *  policy may give up at once.
+         * @pre    The calling thread holds the monitor of the segment.
+         * @post   The segment is unchanged.
+         * @return true if the search should stop; false, otherwise.
+         */
+        public boolean exhausted();
+    } // end interface Slots
+    
+    
+    /**
+     * Records an access to a resident block.
+     * @param  slot  Index of the slot that was read or written.
+     * @pre    slot was filled and has not been removed or evicted since.
+     * @post   The policy has recorded the access.
+     */
+    public void hit(int slot);
+    
+    
+    /**
+     * Records that a slot has been filled with a block after a miss.
+     * @param  slot  Index of the slot now holding blockId.
+     * @param  blockId  The location of the block on the hard disk.
+     * @pre    slot is not resident in this policy.
+     * @post   slot is resident in this policy.
+     */
+    public void fill(int slot, int blockId);
+    
+    
+    /**
+     * Chooses a resident slot to be replaced and records its eviction. The
+     *  chosen slot is no longer resident in this policy when this method
+     *  returns; any history kept about evicted blocks has been updated.
+     * @param  blockId  The block that is about to be brought into the cache.
+     * @param  slots  Tells which resident slots may be chosen.
+     * @pre    Every slot of the segment is resident.
+     * @post   If a slot was returned, it is no longer resident.
+     * @return The index of the slot to replace; -1 if no resident slot is
+     *          evictable.
+     */
+    public int victim(int blockId, Slots slots);
+    
+    
+    /**
+     * Takes back the eviction of a slot chosen by victim(), e.g. when the
+     *  admission filter turns the missing block away or the write-back of
+     *  the victim fails. The slot becomes resident again as it was before
+     *  it was chosen, as far as the policy can tell: it goes back to where
+     *  it was evicted from, any history recorded about its eviction is
+     *  forgotten, and no access is counted, so the block is not promoted.
+     *  Undoing the most recent eviction at once restores the state of the
+     *  policy exactly.
+     * @param  slot  Index of a slot returned by victim().
+     * @param  blockId  The block the slot still holds.
+     * @pre    slot was returned by victim() and has not been filled since.
+     * @post   slot is resident in this policy, holding blockId.
+     */
+    public void restore(int slot, int blockId);
+    
+    
+    /**
+     * Forgets a resident slot without treating it as an eviction, e.g. when
+     *  the cache is flushed or a read into the slot failed.
+     * @param  slot  Index of the slot that no longer holds a block.
+     * @pre    None.
+     * @post   slot is not resident in this policy.
+     */
+    public void remove(int slot);
+    
+    
+    /**
+     * Changes the number of slots of the segment, keeping the state of every
+     *  resident slot. Any targets derived from the number of slots are
+     *  recomputed, and history beyond the new bounds is forgotten.
+     * @param  slots  New number of slots in the segment.
+     * @pre    slots > 0; no slot numbered slots or above is resident.
+     * @post   The policy manages slots 0 .. slots - 1.
+     */
+    public void resize(int slots);
+} // end interface ReplacementPolicy
@@ -0,0 +1,170 @@
+/*
+ * @file    SlabStore.java
+ * @brief   This class is the storage of a cache segment that keeps the data
+ *           of all slots in a few large direct ByteBuffers, or slabs, outside
+ *           the Java heap. A slot is addressed by the slab it lies in and its
+ *           offset there, so however many slots there are, the garbage
+ *           collector sees only a handful of small objects and two int arrays,
+ *           and a large cache adds almost nothing to its pauses. Each slab
+ *           holds up to a gigabyte of whole blocks. The disk can only read
+ *           into and write from Java arrays, so each transfer goes through a
+ *           block-sized array kept per thread and costs one extra copy, which
+ *           is small next to the disk I/O itself.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+import java.nio.ByteBuffer;
+
+
+public class SlabStore implements BlockStore {
+    private final static int SLAB_BYTES = 1 << 30;  // largest slab
+    private int              blockSize;     // bytes per slot
+    private int              slabBlocks;    // largest number of slots a slab
+                                            //  holds
+    private int              capacity;      // slots the slabs have room for
+    private volatile ByteBuffer[] slabs;    // slabs, in order of slot
+    private volatile int[]   slabStart;     // first slot of each slab
+    private volatile int[]   slabOf;        // slab holding each slot
+    private ThreadLocal<byte[]> transfer;   // disk I/O buffer of each thread
+    
+    
+    /**
+     * Initializes a SlabStore with a given number of slots.
+     * @param  blockSize  Bytes per hard disk block.
+     * @param  slots  Number of slots.
+     * @pre    blockSize > 0; slots > 0.
+     * @post   Every slot holds zeroes.
+     */
+    public SlabStore(int blockSize, int slots) {
+        this.blockSize = blockSize;
+        slabBlocks     = Math.max(1, SLAB_BYTES / blockSize);
+        capacity       = 0;
+        slabs          = new ByteBuffer[0];
+        slabStart      = new int[0];
+        slabOf         = new int[0];
+        transfer       = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[SlabStore.this.blockSize];
+            } // end initialValue()
+        };
+        resize(slots);
+    } // end constructor
+    
+    
+    /**
+     * @see    BlockStore#get(int, int, byte[], int, int)
+     */
+    public void get(int slot, int position, byte dst[], int offset,
+                    int length) {
+        int slab = slabOf[slot];
+        
+        slabs[slab].get(offsetOf(slab, slot) + position, dst, offset, length);
+    } // end get(int, int, byte[], int, int)
+    
+    
+    /**
+     * @see    BlockStore#put(int, int, byte[], int, int)
+     */
+    public void put(int slot, int position, byte src[], int offset,
+                    int length) {
+        int slab = slabOf[slot];
+        
+        slabs[slab].put(offsetOf(slab, slot) + position, src, offset, length);
+    } // end put(int, int, byte[], int, int)
+    
+    
+    /**
+     * @see    BlockStore#view(int)
+     */
+    public ByteBuffer view(int slot) {
+        int slab = slabOf[slot];
+        
+        return slabs[slab].slice(offsetOf(slab, slot), blockSize);
+    } // end view(int)
+    
+    
+    /**
+     * @see    BlockStore#read(int, int)
+     */
+    public void read(int slot, int blockId) {
+        byte[] data = transfer.get();
+        
+        SysLib.rawread(blockId, data);
+        put(slot, 0, data, 0, blockSize);
+    } // end read(int, int)
+    
+    
+    /**
+     * @see    BlockStore#write(int, int)
+     */
+    public void write(int slot, int blockId) {
+        byte[] data = transfer.get();
+        
+        get(slot, 0, data, 0, blockSize);
+        SysLib.rawwrite(blockId, data);
+    } // end write(int, int)
+    
+    
+    /**
+     * Changes the number of slots. Growing first uses any room left in the
+     *  last slab, then allocates new slabs; shrinking releases the slabs that
+     *  hold no remaining slot, leaving their memory to be freed when the
+     *  garbage collector finds them unreachable.
+     * @see    BlockStore#resize(int)
+     */
+    public void resize(int slots) {
+        ByteBuffer[] newSlabs = slabs;
+        int[]        newStart = slabStart;
+        int[]        newOf    = java.util.Arrays.copyOf(slabOf, slots);
+        int          count    = Math.min(slabOf.length, slots);
+        
+        if (slots <= capacity) {
+            int kept = newSlabs.length;
+            
+            while (kept > 1 && newStart[kept - 1] >= slots) {
+                capacity = newStart[--kept];
+            } // end while (kept > 1 && newStart[kept - 1] >= slots)
+            
+            newSlabs = java.util.Arrays.copyOf(newSlabs, kept);
+            newStart = java.util.Arrays.copyOf(newStart, kept);
+        } // end if (slots <= capacity)
+        
+        while (capacity < slots) {
+            int blocks = Math.min(slabBlocks, slots - capacity);
+            
+            newSlabs = java.util.Arrays.copyOf(newSlabs, newSlabs.length + 1);
+            newStart = java.util.Arrays.copyOf(newStart, newStart.length + 1);
+            newSlabs[newSlabs.length - 1] =
+                ByteBuffer.allocateDirect(blocks * blockSize);
+            newStart[newStart.length - 1] = capacity;
+            capacity += blocks;
+        } // end while (capacity < slots)
+        
+        // slots past the old end belong to the slab whose range holds them
+        for (int i = count, slab = 0; i < slots; ++i) {
+            while (slab + 1 < newStart.length && newStart[slab + 1] <= i) {
+                ++slab;
+            } // end while (slab + 1 < newStart.length && ...)
+            
+            newOf[i] = slab;
+        } // end for (; i < slots; )
+        
+        slabs     = newSlabs;
+        slabStart = newStart;
+        slabOf    = newOf;
+    } // end resize(int)
+    
+    
+    /**
+     * Locates a slot within its slab.
+     * @param  slab  Index of the slab holding slot.
+     * @param  slot  Index of the slot.
+     * @pre    slabOf[slot] == slab.
+     * @post   This SlabStore is unchanged.
+     * @return The offset, in bytes, of the first byte of slot in its slab.
+     */
+    private int offsetOf(int slab, int slot) {
+        return (slot - slabStart[slab]) * blockSize;
+    } // end offsetOf(int, int)
+} // end class SlabStore
@@ -0,0 +1,135 @@
+/*
+ * @file    SlotBits.java
+ * @brief   This class is a packed set of cache slot indices, one bit per
+ *           slot in an array of longs. It holds per-slot flags, such as dirty
+ *           or busy, in an eighth of the memory of a boolean array and with
+ *           no object per slot, and it lets a scan test the flags of 64 slots
+ *           at a time by reading a whole word. Bits past the last slot are
+ *           always clear.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class SlotBits {
+    private long[]           words;         // the bits, 64 slots per word
+    
+    
+    /**
+     * Initializes an empty SlotBits for a given number of slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   No bit is set.
+     */
+    public SlotBits(int slots) {
+        words = new long[wordsFor(slots)];
+    } // end constructor
+    
+    
+    /**
+     * Tests the bit of a slot.
+     * @param  slot  Index of a slot.
+     * @pre    0 <= slot < number of slots.
+     * @post   This SlotBits is unchanged.
+     * @return true if the bit of slot is set; false, otherwise.
+     */
+    public boolean get(int slot) {
+        return (words[slot >>> 6] & (1L << (slot & 63))) != 0;
+    } // end get(int)
+    
+    
+    /**
+     * Sets the bit of a slot.
+     * @param  slot  Index of a slot.
+     * @pre    0 <= slot < number of slots.
+     * @post   The bit of slot is set.
+     */
+    public void set(int slot) {
+        words[slot >>> 6] |= 1L << (slot & 63);
+    } // end set(int)
+    
+    
+    /**
+     * Clears the bit of a slot.
+     * @param  slot  Index of a slot.
+     * @pre    0 <= slot < number of slots.
+     * @post   The bit of slot is clear.
+     */
+    public void clear(int slot) {
+        words[slot >>> 6] &= ~(1L << (slot & 63));
+    } // end clear(int)
+    
+    
+    /**
+     * Reads the bits of 64 consecutive slots.
+     * @param  word  Index of the word; it holds slots 64 * word onwards, the
+     *                lowest slot in the lowest bit.
+     * @pre    0 <= word < words().
+     * @post   This SlotBits is unchanged.
+     * @return The bits of the word.
+     */
+    public long word(int word) {
+        return words[word];
+    } // end word(int)
+    
+    
+    /**
+     * Clears the bits of some of 64 consecutive slots.
+     * @param  word  Index of the word.
+     * @param  mask  Bits to clear.
+     * @pre    0 <= word < words().
+     * @post   Every bit of the word that is set in mask is clear.
+     */
+    public void clear(int word, long mask) {
+        words[word] &= ~mask;
+    } // end clear(int, long)
+    
+    
+    /**
+     * Sets the bits of some of 64 consecutive slots.
+     * @param  word  Index of the word.
+     * @param  mask  Bits to set.
+     * @pre    0 <= word < words().
+     * @post   Every bit of the word that is set in mask is set.
+     */
+    public void set(int word, long mask) {
+        words[word] |= mask;
+    } // end set(int, long)
+    
+    
+    /**
+     * Reports the number of words holding the bits.
+     * @pre    None.
+     * @post   This SlotBits is unchanged.
+     * @return The number of words.
+     */
+    public int words() {
+        return words.length;
+    } // end words()
+    
+    
+    /**
+     * Changes the number of slots, keeping the bits of the slots that remain
+     *  and clearing those of the slots removed.
+     * @param  slots  New number of slots.
+     * @pre    slots > 0.
+     * @post   Slots 0 .. slots - 1 keep their bits; new slots are clear.
+     */
+    public void resize(int slots) {
+        words = java.util.Arrays.copyOf(words, wordsFor(slots));
+        
+        if ((slots & 63) != 0) {
+            words[words.length - 1] &= (1L << (slots & 63)) - 1;
+        } // end if ((slots & 63) != 0)
+    } // end resize(int)
+    
+    
+    /**
+     * Computes the number of words needed for a number of slots.
+     * @param  slots  Number of slots.
+     * @pre    slots >= 0.
+     * @post   None.
+     * @return The number of 64-bit words that hold slots bits.
+     */
+    private static int wordsFor(int slots) {
+        return (slots + 63) >>> 6;
+    } // end wordsFor(int)
+} // end class SlotBits
@@ -0,0 +1,212 @@
+/*
+ * @file    SlotList.java
+ * @brief   This class is an intrusive doubly linked list of cache slot
+ *           indices, used by replacement policies to keep slots in recency or
+ *           arrival order. Links are stored in int arrays indexed by slot, so
+ *           moving a slot costs no allocation. A slot is in at most one
+ *           position of a given list at a time. The head is the most recently
+ *           inserted slot and the tail the least recently inserted one.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class SlotList {
+    private final static int NONE = -1; // end of list marker
+    private int[]            prev;      // slot nearer the head of each slot
+    private int[]            next;      // slot nearer the tail of each slot
+    private boolean[]        member;    // whether each slot is in this list
+    private int              head;      // most recently inserted slot
+    private int              tail;      // least recently inserted slot
+    private int              size;      // number of slots in this list
+    
+    
+    /**
+     * Initializes an empty SlotList for a given number of slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   This SlotList is empty.
+     */
+    public SlotList(int slots) {
+        prev   = new int[slots];
+        next   = new int[slots];
+        member = new boolean[slots];
+        head   = NONE;
+        tail   = NONE;
+        size   = 0;
+    } // end constructor
+    
+    
+    /**
+     * Inserts a slot at the head of this list, moving it if it is already a
+     *  member.
+     * @param  slot  Index of the slot to insert.
+     * @pre    None.
+     * @post   slot is the head of this list.
+     */
+    public void push(int slot) {
+        if (member[slot]) {
+            remove(slot);
+        } // end if (member[slot])
+        
+        prev[slot]   = NONE;
+        next[slot]   = head;
+        member[slot] = true;
+        
+        if (head != NONE) {
+            prev[head] = slot;
+        } // end if (head != NONE)
+        else {
+            tail = slot;
+        } // end else (head == NONE)
+        
+        head = slot;
+        ++size;
+    } // end push(int)
+    
+    
+    /**
+     * Inserts a slot just ahead of another member, toward the head, or at
+     *  the tail, moving it if it is already a member.
+     * @param  slot  Index of the slot to insert.
+     * @param  older  The member to insert slot ahead of; -1 for the tail.
+     * @pre    older is -1 or a member other than slot.
+     * @post   slot is a member, next to older or at the tail.
+     */
+    public void insert(int slot, int older) {
+        int newer;
+        
+        if (member[slot]) {
+            remove(slot);
+        } // end if (member[slot])
+        
+        newer        = (older == NONE) ? tail : prev[older];
+        prev[slot]   = newer;
+        next[slot]   = older;
+        member[slot] = true;
+        
+        if (newer != NONE) {
+            next[newer] = slot;
+        } // end if (newer != NONE)
+        else {
+            head = slot;
+        } // end else (newer == NONE)
+        
+        if (older != NONE) {
+            prev[older] = slot;
+        } // end if (older != NONE)
+        else {
+            tail = slot;
+        } // end else (older == NONE)
+        
+        ++size;
+    } // end insert(int, int)
+    
+    
+    /**
+     * Removes a slot from this list if it is a member.
+     * @param  slot  Index of the slot to remove.
+     * @pre    None.
+     * @post   slot is not a member of this list.
+     */
+    public void remove(int slot) {
+        if (!member[slot]) {
+            return;
+        } // end if (!member[slot])
+        
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } // end if (prev[slot] != NONE)
+        else {
+            head = next[slot];
+        } // end else (prev[slot] == NONE)
+        
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } // end if (next[slot] != NONE)
+        else {
+            tail = prev[slot];
+        } // end else (next[slot] == NONE)
+        
+        member[slot] = false;
+        --size;
+    } // end remove(int)
+    
+    
+    /**
+     * Changes the number of slots this list can hold, keeping its members in
+     *  order.
+     * @param  slots  New number of slots in the segment.
+     * @pre    slots > 0; no slot numbered slots or above is a member.
+     * @post   Slots 0 .. slots - 1 may be members.
+     */
+    public void resize(int slots) {
+        prev   = java.util.Arrays.copyOf(prev, slots);
+        next   = java.util.Arrays.copyOf(next, slots);
+        member = java.util.Arrays.copyOf(member, slots);
+    } // end resize(int)
+    
+    
+    /**
+     * Finds the evictable slot nearest the tail of this list, giving up if
+     *  the victim search is exhausted first.
+     * @param  slots  Tells which slots may be chosen.
+     * @pre    None.
+     * @post   This SlotList is unchanged.
+     * @return The oldest evictable slot; -1 if there is none.
+     */
+    public int oldest(ReplacementPolicy.Slots slots) {
+        for (int slot = tail; slot != NONE && !slots.exhausted();
+             slot = prev[slot]) {
+            if (slots.evictable(slot)) {
+                return slot;
+            } // end if (slots.evictable(slot))
+        } // end for (; slot != NONE && ...; )
+        
+        return NONE;
+    } // end oldest(ReplacementPolicy.Slots)
+    
+    
+    /**
+     * Reports the slot at the head of this list.
+     * @pre    None.
+     * @post   This SlotList is unchanged.
+     * @return The most recently inserted slot; -1 if this list is empty.
+     */
+    public int newest() {
+        return head;
+    } // end newest()
+    
+    
+    /**
+     * Reports the slot after a given one, toward the tail of this list.
+     * @param  slot  A member of this list.
+     * @pre    contains(slot).
+     * @post   This SlotList is unchanged.
+     * @return The next less recently inserted slot; -1 if slot is the tail.
+     */
+    public int older(int slot) {
+        return next[slot];
+    } // end older(int)
+    
+    
+    /**
+     * Checks whether a slot is in this list.
+     * @param  slot  Index of the slot to check.
+     * @pre    None.
+     * @post   This SlotList is unchanged.
+     * @return true if slot is a member; false, otherwise.
+     */
+    public boolean contains(int slot) {
+        return member[slot];
+    } // end contains(int)
+    
+    
+    /**
+     * Reports the number of slots in this list.
+     * @pre    None.
+     * @post   This SlotList is unchanged.
+     * @return The number of members.
+     */
+    public int size() {
+        return size;
+    } // end size()
+} // end class SlotList
@@ -0,0 +1,28 @@
+/*
+ * @file    SstfScheduler.java
+ * @brief   This class is the shortest-seek-time-first disk scheduler: it
+ *           serves the request nearest the head, in either direction, and the
+ *           oldest of those that are equally near. It makes the shortest
+ *           seeks, but a stream of requests near the head can keep far ones
+ *           waiting until they age.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class SstfScheduler implements DiskScheduler {
+    /**
+     * Chooses the request nearest the head.
+     * @see    DiskScheduler#choose(DiskRequest[], int, int)
+     */
+    public int choose(DiskRequest pending[], int count, int head) {
+        int best = 0;
+        
+        for (int i = 1; i < count; ++i) {
+            if (Math.abs(pending[i].blockId() - head) <
+                Math.abs(pending[best].blockId() - head)) {
+                best = i;
+            } // end if (Math.abs(pending[i].blockId() - head) < ...)
+        } // end for (; i < count; )
+        
+        return best;
+    } // end choose(DiskRequest[], int, int)
+} // end class SstfScheduler
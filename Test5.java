@@ -0,0 +1,377 @@
+/*
+ * @file    Test5.java
+ * @brief   This class is a test case for the cache system calls added after
+ *           Assignment 4: the asynchronous reads and writes with their
+ *           completion handles, the vectored and partial-block reads and
+ *           writes, the cache resize and the disk sync statistics. Each call
+ *           is made through Kernel.interrupt(), as SysLib would make it, and
+ *           its return value is checked, as is every block of data that goes
+ *           through the cache against what was written. Handles that were
+ *           already collected, including one whose request slot has since
+ *           been reused and one waited for by two threads at once, must be
+ *           rejected. Every failed check is printed to standard out, followed
+ *           by the number of checks made and failed. Blocks 100 through 199
+ *           are overwritten, and the cache is left at 10 blocks, as Kernel
+ *           boots it.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class Test5 extends Thread {
+    private final static int BLOCK_SIZE   = 512,    // block size of disk
+                             BASE         = 100,    // first block overwritten
+                             REQUESTS     = 8,      // async requests at once
+                             CACHE_BLOCKS = 10;     // cache size at boot
+    private int checks;         // number of checks made
+    private int failures;       // number of checks that failed
+    
+    
+    /**
+     * Initializes the test; it takes no arguments.
+     * @param  args  Ignored.
+     * @pre    None.
+     * @post   The test is ready to be run.
+     */
+    public Test5(String[] args) {
+        checks   = 0;
+        failures = 0;
+    } // end constructor
+    
+    
+    /**
+     * Runs every group of checks in turn.
+     * @pre    None.
+     * @post   Failed checks and a summary are printed to standard out; blocks
+     *          BASE to BASE + 99 have been overwritten.
+     */
+    @Override
+    public void run() {
+        asyncAccess();
+        sharedHandle();
+        vectoredAccess();
+        partialAccess();
+        resize();
+        diskStats();
+        
+        SysLib.cout("Test5: " + checks + " checks, " + failures +
+                    " failed\n");
+        SysLib.exit();
+    } // end run()
+    
+    
+    /**
+     * Checks ACREAD, ACWRITE, CWAIT and CPOLL: several writes are
+     *  outstanding at once and are read back, and collected, reused and
+     *  invalid handles are rejected.
+     * @pre    None.
+     * @post   Blocks BASE to BASE + REQUESTS - 1 hold pattern(blockId).
+     */
+    private void asyncAccess() {
+        int[]    handle = new int[REQUESTS];
+        byte[][] data   = new byte[REQUESTS][BLOCK_SIZE];
+        int      first;
+        int      second;
+        
+        for (int i = 0; i < REQUESTS; ++i) {
+            pattern(BASE + i, data[i]);
+            handle[i] = call(Kernel.ACWRITE, BASE + i, data[i]);
+            check(handle[i] >= 0, "ACWRITE returns a handle");
+        } // end for (; i < REQUESTS; )
+        
+        for (int i = 0; i < REQUESTS; ++i) {
+            check(call(Kernel.CWAIT, handle[i], null) == Kernel.OK,
+                  "CWAIT on a write returns OK");
+        } // end for (; i < REQUESTS; )
+        
+        check(call(Kernel.CWAIT, handle[0], null) == Kernel.ERROR,
+              "CWAIT on a collected handle returns ERROR");
+        check(call(Kernel.CPOLL, handle[0], null) == Kernel.ERROR,
+              "CPOLL on a collected handle returns ERROR");
+        check(call(Kernel.CWAIT, -1, null) == Kernel.ERROR,
+              "CWAIT on an invalid handle returns ERROR");
+        
+        for (int i = 0; i < REQUESTS; ++i) {
+            data[i]   = new byte[BLOCK_SIZE];
+            handle[i] = call(Kernel.ACREAD, BASE + i, data[i]);
+            check(handle[i] >= 0, "ACREAD returns a handle");
+        } // end for (; i < REQUESTS; )
+        
+        for (int i = 0; i < REQUESTS; ++i) {
+            int result;
+            
+            do {
+                Thread.yield();
+                result = call(Kernel.CPOLL, handle[i], null);
+            } while (result == Kernel.PENDING);
+            
+            check(result == Kernel.OK, "CPOLL on a read returns OK");
+            check(matches(BASE + i, data[i], 0),
+                  "ACREAD returns the data of ACWRITE");
+        } // end for (; i < REQUESTS; )
+        
+        // the slot of a collected request is the first one reused
+        first  = call(Kernel.ACREAD, BASE, new byte[BLOCK_SIZE]);
+        check(call(Kernel.CWAIT, first, null) == Kernel.OK,
+              "CWAIT on a read returns OK");
+        second = call(Kernel.ACREAD, BASE + 1, new byte[BLOCK_SIZE]);
+        check(call(Kernel.CWAIT, first, null) == Kernel.ERROR,
+              "CWAIT on a handle whose slot was reused returns ERROR");
+        check(call(Kernel.CWAIT, second, null) == Kernel.OK,
+              "CWAIT on the request that reused a slot returns OK");
+    } // end asyncAccess()
+    
+    
+    /**
+     * Checks that a handle waited for by two threads at once is collected by
+     *  only one of them, even when its slot is reused at once by the thread
+     *  that collected it.
+     * @pre    None.
+     * @post   Block BASE + 10 holds pattern(BASE + 10).
+     */
+    private void sharedHandle() {
+        final int   handle;
+        final int[] other  = { Kernel.ERROR };  // result in the other thread
+        byte[]      data   = new byte[BLOCK_SIZE];
+        Thread      waiter;
+        int         mine;
+        int         reused;
+        
+        pattern(BASE + 10, data);
+        handle = call(Kernel.ACWRITE, BASE + 10, data);
+        waiter = new Thread() {
+            public void run() {
+                other[0] = call(Kernel.CWAIT, handle, null);
+            } // end run()
+        }; // end waiter
+        
+        waiter.start();
+        mine   = call(Kernel.CWAIT, handle, null);
+        reused = call(Kernel.ACREAD, BASE + 10, new byte[BLOCK_SIZE]);
+        
+        try {
+            waiter.join();
+        } catch (InterruptedException e) { }
+        
+        check((mine == Kernel.OK) != (other[0] == Kernel.OK),
+              "exactly one of two CWAITs on a handle returns OK");
+        check(call(Kernel.CWAIT, reused, null) == Kernel.OK,
+              "a request reusing a slot is not collected by a stale CWAIT");
+    } // end sharedHandle()
+    
+    
+    /**
+     * Checks CWRITEV and CREADV: blocks written as one vector, out of order
+     *  and with a gap, are read back as a vector in another order and one
+     *  by one.
+     * @pre    None.
+     * @post   The blocks written hold pattern(blockId).
+     */
+    private void vectoredAccess() {
+        int[]  written = { BASE + 20, BASE + 22, BASE + 21, BASE + 40 };
+        int[]  read    = { BASE + 40, BASE + 20, BASE + 21, BASE + 22 };
+        byte[] data    = new byte[written.length * BLOCK_SIZE];
+        byte[] block   = new byte[BLOCK_SIZE];
+        
+        for (int i = 0; i < written.length; ++i) {
+            pattern(written[i], block);
+            System.arraycopy(block, 0, data, i * BLOCK_SIZE, BLOCK_SIZE);
+        } // end for (; i < written.length; )
+        
+        check(call(Kernel.CWRITEV, 0, new Object[] { written, data }) ==
+              Kernel.OK, "CWRITEV returns OK");
+        
+        data = new byte[read.length * BLOCK_SIZE];
+        check(call(Kernel.CREADV, 0, new Object[] { read, data }) ==
+              Kernel.OK, "CREADV returns OK");
+        
+        for (int i = 0; i < read.length; ++i) {
+            check(matches(read[i], data, i * BLOCK_SIZE),
+                  "CREADV returns the data of CWRITEV");
+            check(SysLib.cread(written[i], block) == Kernel.OK &&
+                  matches(written[i], block, 0),
+                  "cread returns the data of CWRITEV");
+        } // end for (; i < read.length; )
+    } // end vectoredAccess()
+    
+    
+    /**
+     * Checks CWRITEP and CREADP: part of a block is overwritten, and a range
+     *  spanning both sides of the change is read back. Ranges that do not lie
+     *  within a block, and a whole-block write of less than a block, are
+     *  rejected.
+     * @pre    None.
+     * @post   Block BASE + 50 holds pattern(BASE + 50), but for bytes 100 to
+     *          149, which hold pattern(BASE + 51).
+     */
+    private void partialAccess() {
+        int    blockId = BASE + 50;
+        byte[] whole   = new byte[BLOCK_SIZE];
+        byte[] part    = new byte[BLOCK_SIZE];
+        byte[] data    = new byte[70];
+        
+        pattern(blockId, whole);
+        pattern(blockId + 1, part);
+        check(SysLib.cwrite(blockId, whole) == Kernel.OK,
+              "cwrite returns OK");
+        check(call(Kernel.CWRITEP, blockId, new Object[] { 100, 50, part }) ==
+              Kernel.OK, "CWRITEP returns OK");
+        check(call(Kernel.CREADP, blockId, new Object[] { 90, 70, data }) ==
+              Kernel.OK, "CREADP returns OK");
+        check(same(data, 0, whole, 90, 10) && same(data, 10, part, 0, 50) &&
+              same(data, 60, whole, 150, 10),
+              "CREADP returns the bytes of cwrite and CWRITEP");
+        
+        data = new byte[BLOCK_SIZE];
+        check(SysLib.cread(blockId, data) == Kernel.OK &&
+              same(data, 0, whole, 0, 100) && same(data, 100, part, 0, 50) &&
+              same(data, 150, whole, 150, BLOCK_SIZE - 150),
+              "cread returns the bytes of cwrite and CWRITEP");
+        check(call(Kernel.CREADP, blockId,
+                   new Object[] { BLOCK_SIZE - 10, 20, data }) == Kernel.ERROR,
+              "CREADP past the end of a block returns ERROR");
+        check(call(Kernel.CWRITEP, blockId, new Object[] { -1, 20, part }) ==
+              Kernel.ERROR, "CWRITEP before a block returns ERROR");
+        check(SysLib.cwrite(blockId, new byte[BLOCK_SIZE / 2]) ==
+              Kernel.ERROR, "cwrite of less than a block returns ERROR");
+    } // end partialAccess()
+    
+    
+    /**
+     * Checks CRESIZE: the cache is shrunk, which writes back blocks, and
+     *  grown again, and the blocks written earlier read back the same every
+     *  time. A size of zero is rejected.
+     * @pre    asyncAccess() has run.
+     * @post   The cache holds CACHE_BLOCKS blocks.
+     */
+    private void resize() {
+        int[]  sizes = { 3, 4 * CACHE_BLOCKS, CACHE_BLOCKS };
+        byte[] data  = new byte[BLOCK_SIZE];
+        
+        for (int s = 0; s < sizes.length; ++s) {
+            check(call(Kernel.CRESIZE, sizes[s], null) == Kernel.OK,
+                  "CRESIZE returns OK");
+            
+            for (int i = 0; i < REQUESTS; ++i) {
+                check(SysLib.cread(BASE + i, data) == Kernel.OK &&
+                      matches(BASE + i, data, 0),
+                      "blocks keep their data through CRESIZE");
+            } // end for (; i < REQUESTS; )
+        } // end for (; s < sizes.length; )
+        
+        check(call(Kernel.CRESIZE, 0, null) == Kernel.ERROR,
+              "CRESIZE to no blocks returns ERROR");
+    } // end resize()
+    
+    
+    /**
+     * Checks DSTATS: a sync after a block is written to the disk counts one
+     *  more sync, which wrote at least that block.
+     * @pre    None.
+     * @post   Block BASE + 60 holds pattern(BASE + 60) on the disk; the disk
+     *          is synchronized.
+     */
+    private void diskStats() {
+        long[] before = new long[3];
+        long[] after  = new long[3];
+        byte[] data   = new byte[BLOCK_SIZE];
+        
+        pattern(BASE + 60, data);
+        check(call(Kernel.DSTATS, 0, before) == 3, "DSTATS returns 3");
+        SysLib.rawwrite(BASE + 60, data);
+        SysLib.sync();
+        check(call(Kernel.DSTATS, 0, after) == 3, "DSTATS returns 3");
+        check(after[0] == before[0] + 1, "DSTATS counts the sync");
+        check(after[1] >= BLOCK_SIZE,
+              "DSTATS reports the block the sync wrote");
+        check(after[2] == before[2] + after[1],
+              "DSTATS adds the bytes of the sync to the total");
+        check(call(Kernel.DSTATS, 0, null) == Kernel.ERROR,
+              "DSTATS without an array returns ERROR");
+    } // end diskStats()
+    
+    
+    /**
+     * Makes a system call.
+     * @param  syscall  A system call number of Kernel.
+     * @param  param  The parameter of the call.
+     * @param  args  The arguments of the call.
+     * @pre    None.
+     * @post   The call has been made.
+     * @return The value the call returned.
+     */
+    private static int call(int syscall, int param, Object args) {
+        return Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, syscall, param,
+                                args);
+    } // end call(int, int, Object)
+    
+    
+    /**
+     * Counts a check, printing it if it failed.
+     * @param  passed  Whether the check passed.
+     * @param  what  What was checked.
+     * @pre    None.
+     * @post   The check has been counted.
+     */
+    private void check(boolean passed, String what) {
+        ++checks;
+        
+        if (!passed) {
+            ++failures;
+            SysLib.cout("  FAILED: " + what + "\n");
+        } // end if (!passed)
+    } // end check(boolean, String)
+    
+    
+    /**
+     * Fills a buffer with data that differs from block to block.
+     * @param  blockId  The block the data is for.
+     * @param  buffer  A buffer the size of a block.
+     * @pre    buffer is not null.
+     * @post   buffer holds the pattern of blockId.
+     */
+    private static void pattern(int blockId, byte buffer[]) {
+        for (int i = 0; i < BLOCK_SIZE; ++i) {
+            buffer[i] = (byte)(blockId * 31 + i);
+        } // end for (; i < BLOCK_SIZE; )
+    } // end pattern(int, byte[])
+    
+    
+    /**
+     * Checks whether a block in a buffer holds the pattern of a block.
+     * @param  blockId  The block the data is for.
+     * @param  buffer  A buffer holding at least one block from offset.
+     * @param  offset  Position in buffer of the first byte of the block.
+     * @pre    buffer is not null.
+     * @post   None.
+     * @return true if the block at offset is pattern(blockId); false,
+     *          otherwise.
+     */
+    private static boolean matches(int blockId, byte buffer[], int offset) {
+        byte[] expected = new byte[BLOCK_SIZE];
+        
+        pattern(blockId, expected);
+        return same(buffer, offset, expected, 0, BLOCK_SIZE);
+    } // end matches(int, byte[], int)
+    
+    
+    /**
+     * Compares two ranges of bytes.
+     * @param  a  One buffer.
+     * @param  aFrom  Position of the range in a.
+     * @param  b  The other buffer.
+     * @param  bFrom  Position of the range in b.
+     * @param  length  Number of bytes to compare.
+     * @pre    Both ranges lie within their buffers.
+     * @post   None.
+     * @return true if the ranges hold the same bytes; false, otherwise.
+     */
+    private static boolean same(byte a[], int aFrom, byte b[], int bFrom,
+                                int length) {
+        for (int i = 0; i < length; ++i) {
+            if (a[aFrom + i] != b[bFrom + i]) {
+                return false;
+            } // end if (a[aFrom + i] != b[bFrom + i])
+        } // end for (; i < length; )
+        
+        return true;
+    } // end same(byte[], int, byte[], int, int)
+} // end class Test5
@@ -0,0 +1,173 @@
+/*
+ * @file    TwoQueuePolicy.java
+ * @brief   This class is the full 2Q replacement policy of Johnson and
+ *           Shasha. A block seen for the first time enters A1in, a FIFO queue
+ *           holding about a quarter of the slots. When it falls out of A1in,
+ *           only its block ID is remembered, in the ghost queue A1out. A block
+ *           that misses again while it is remembered in A1out is admitted to
+ *           Am, an LRU list that holds the hot working set. Blocks touched
+ *           only once therefore pass through A1in without disturbing Am.
+ *           A1out holds bare block IDs in a GhostList, so an eviction creates
+ *           no object.
+ * @author  Brendan Sweeney, SID 1161836
+ * @date    November 28, 2012
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+    private int              inLimit;       // Kin: target size of A1in
+    private int              outLimit;      // Kout: size of A1out
+    private int[]            block;         // block ID of each slot
+    private SlotList         a1in;          // resident, first access
+    private SlotList         am;            // resident, hot
+    private GhostList        a1out;         // evicted from A1in; may exceed
+                                            //  Kout until the next fill
+    private int[]            evictedNext;   // slot older than each victim
+                                            //  when it was evicted, or -1
+    private SlotBits         evictedIn;     // victims evicted from A1in
+    
+    
+    /**
+     * Initializes this TwoQueuePolicy for a given number of slots, with the
+     *  queue sizes recommended by the authors: A1in a quarter of the slots and
+     *  A1out half as many block IDs as there are slots.
+     * @param  slots  Number of slots in the segment.
+     * @pre    slots > 0.
+     * @post   No slot is resident; no history is remembered.
+     */
+    public TwoQueuePolicy(int slots) {
+        inLimit     = Math.max(1, slots / 4);
+        outLimit    = Math.max(1, slots / 2);
+        block       = new int[slots];
+        a1in        = new SlotList(slots);
+        am          = new SlotList(slots);
+        a1out       = new GhostList(outLimit + slots);
+        evictedNext = new int[slots];
+        evictedIn   = new SlotBits(slots);
+    } // end constructor
+    
+    
+    /**
+     * Moves the slot to the most recently used end of Am if it is there; a
+     *  hit in A1in is not a sign of long-term use, so it is ignored.
+     * @see    ReplacementPolicy#hit(int)
+     */
+    public void hit(int slot) {
+        if (am.contains(slot)) {
+            am.push(slot);
+        } // end if (am.contains(slot))
+    } // end hit(int)
+    
+    
+    /**
+     * Admits the slot to Am if its block is remembered in A1out; otherwise,
+     *  queues it in A1in. A1out is first cut back to its newest Kout block
+     *  IDs, which victim() leaves to the next fill so that an eviction can
+     *  be taken back.
+     * @see    ReplacementPolicy#fill(int, int)
+     */
+    public void fill(int slot, int blockId) {
+        block[slot] = blockId;
+        
+        while (a1out.size() > outLimit) {
+            a1out.dropOldest();
+        } // end while (a1out.size() > outLimit)
+        
+        if (a1out.remove(blockId)) {
+            am.push(slot);
+        } // end if (a1out.remove(blockId))
+        else {
+            a1in.push(slot);
+        } // end else (blockId not remembered)
+    } // end fill(int, int)
+    
+    
+    /**
+     * Evicts the oldest slot of A1in, remembering its block in A1out, if A1in
+     *  is over its target size; otherwise, evicts the least recently used slot
+     *  of Am.
+     * @see    ReplacementPolicy#victim(int, ReplacementPolicy.Slots)
+     */
+    public int victim(int blockId, Slots slots) {
+        int slot = -1;
+        
+        if (a1in.size() > inLimit || am.size() == 0) {
+            slot = a1in.oldest(slots);
+        } // end if (a1in.size() > inLimit || am.size() == 0)
+        
+        if (slot == -1) {
+            slot = am.oldest(slots);
+        } // end if (slot == -1)
+        
+        if (slot == -1) {
+            slot = a1in.oldest(slots);
+        } // end if (slot == -1)
+        
+        if (slot == -1) {
+            return -1;
+        } // end if (slot == -1)
+        
+        if (a1in.contains(slot)) {
+            evictedNext[slot] = a1in.older(slot);
+            evictedIn.set(slot);
+            a1in.remove(slot);
+            a1out.add(block[slot]);
+        } // end if (a1in.contains(slot))
+        else {
+            evictedNext[slot] = am.older(slot);
+            evictedIn.clear(slot);
+            am.remove(slot);
+        } // end else (am.contains(slot))
+        
+        return slot;
+    } // end victim(int, Slots)
+    
+    
+    /**
+     * Forgets the A1out entry of a victim from A1in and puts the victim back
+     *  into the queue it was evicted from, ahead of the slot that was older
+     *  than it if that is still there, or at the eviction end otherwise.
+     * @see    ReplacementPolicy#restore(int, int)
+     */
+    public void restore(int slot, int blockId) {
+        SlotList queue = evictedIn.get(slot) ? a1in : am;
+        int      older = evictedNext[slot];
+        
+        block[slot] = blockId;
+        
+        if (evictedIn.get(slot)) {
+            a1out.remove(blockId);
+        } // end if (evictedIn.get(slot))
+        
+        queue.insert(slot, (older != -1 && queue.contains(older)) ? older
+                                                                   : -1);
+    } // end restore(int, int)
+    
+    
+    /**
+     * @see    ReplacementPolicy#remove(int)
+     */
+    public void remove(int slot) {
+        a1in.remove(slot);
+        am.remove(slot);
+    } // end remove(int)
+    
+    
+    /**
+     * Recomputes Kin and Kout for the new number of slots and forgets the
+     *  oldest block IDs of A1out beyond Kout.
+     * @see    ReplacementPolicy#resize(int)
+     */
+    public void resize(int slots) {
+        inLimit     = Math.max(1, slots / 4);
+        outLimit    = Math.max(1, slots / 2);
+        block       = java.util.Arrays.copyOf(block, slots);
+        evictedNext = java.util.Arrays.copyOf(evictedNext, slots);
+        evictedIn.resize(slots);
+        a1in.resize(slots);
+        am.resize(slots);
+        a1out.resize(outLimit + slots);
+        
+        while (a1out.size() > outLimit) {
+            a1out.dropOldest();
+        } // end while (a1out.size() > outLimit)
+    } // end resize(int)
+} // end class TwoQueuePolicy